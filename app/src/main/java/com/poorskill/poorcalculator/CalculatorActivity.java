@@ -25,6 +25,7 @@ package com.poorskill.poorcalculator;
 import android.content.ClipData;
 import android.content.ClipboardManager;
 import android.content.Context;
+import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.Button;
@@ -33,6 +34,14 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.poorskill.poorcalculator.calculator.CostEstimate;
+import com.poorskill.poorcalculator.calculator.CostEstimator;
+import com.poorskill.poorcalculator.calculator.EvaluationService;
+import com.poorskill.poorcalculator.calculator.FormulaValidator;
+import com.poorskill.poorcalculator.calculator.IncrementalEvaluator;
+import com.poorskill.poorcalculator.calculator.NumberAccumulator;
+import com.poorskill.poorcalculator.calculator.PrecisionPolicy;
+import com.poorskill.poorcalculator.calculator.TokenBuffer;
 import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
 import com.poorskill.poorcalculator.calculator.characters.CalculatorConstant;
 import com.poorskill.poorcalculator.calculator.characters.CalculatorNumber;
@@ -43,6 +52,7 @@ import com.poorskill.poorcalculator.calculator.characters.supported.SupportedCon
 import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
 import com.poorskill.poorcalculator.calculator.exceptions.CalculatorException;
 import com.poorskill.poorcalculator.calculator.exceptions.DividedByZeroException;
+import com.poorskill.poorcalculator.calculator.exceptions.LimitExceededException;
 import com.poorskill.poorcalculator.calculator.exceptions.MissingFormulaException;
 import com.poorskill.poorcalculator.calculator.history.History;
 import com.poorskill.poorcalculator.calculator.history.HistoryCalculation;
@@ -50,29 +60,39 @@ import com.poorskill.poorcalculator.design.ThemeManager;
 
 import java.math.BigDecimal;
 import java.text.DecimalFormatSymbols;
-import java.util.ArrayList;
 import java.util.List;
 
-import static com.poorskill.poorcalculator.calculator.Calculator.calculateCCS;
 import static com.poorskill.poorcalculator.calculator.utility.CalculatorConverter.convertCalculatorCharsToString;
 import static com.poorskill.poorcalculator.calculator.utility.CalculatorConverter.formatResultToString;
 
 public class CalculatorActivity extends AppCompatActivity implements View.OnClickListener, View.OnLongClickListener {
+    private static final int REQUEST_HISTORY = 1;
+    //Evaluations which take longer show the progress text, faster ones don't flicker
+    private static final long PROGRESS_DELAY_MS = 150;
+    //Integer digits up to which the live preview is formatted, longer results are only shown by the equals button
+    private static final int MAX_PREVIEW_DIGITS = 1000;
+    private static final double LOG10_2 = Math.log10(2);
 
     //History Class Object
     private History history;
 
-    //CalculatorCharacters Lists
-    private ArrayList<CalculatorCharacter> ccs = new ArrayList<>();
-    private ArrayList<CalculatorCharacter> lastCalculation = new ArrayList<>();
+    //CalculatorCharacters List
+    private final TokenBuffer tokens = new TokenBuffer();
+    private final List<CalculatorCharacter> ccs = tokens.asList();
+    //Follows every change of ccs for the live result preview
+    //Faculties which are too expensive for the UI thread get no preview
+    private IncrementalEvaluator liveEvaluator = new IncrementalEvaluator(PrecisionPolicy.STANDARD, CostEstimator.DEFAULT);
+    //Checks the formula while typing, invalid formulas get no preview without calculating anything
+    private final FormulaValidator validator = new FormulaValidator();
+    //Calculates the formulas of the equals button, expensive ones off the UI thread
+    private EvaluationService evaluationService;
     //Cached Values
     private BigDecimal lastResult;
     private String stringDecimalSeparator;
     //Input Digits
-    private StringBuilder digits = new StringBuilder();
+    private final NumberAccumulator digits = new NumberAccumulator();
     //Calculator Input Flags
     private boolean isCalculated;
-    private boolean isDecimal;
     private boolean isBuildingNumber;
     private boolean hasPlaceholder;
     private boolean lastIsBracketClosed;
@@ -83,6 +103,8 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
     //Cached Layout Objects for continues manipulation
     private TextView resultDisplay;
     private TextView formulaDisplay;
+    //Shows the progress text of a running evaluation
+    private final Runnable showProgress = () -> resultDisplay.setText(getResources().getString(R.string.calculating));
 
 
     /**
@@ -95,13 +117,61 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
         super.onCreate(savedInstanceState);
         setContentView(R.layout.caclculator_activity);
         //History Object for loading/saving calculations
-        this.history = new History(getApplicationContext());
+        this.history = History.getInstance(getApplicationContext());
         //Setup OnClickListener
         layoutSetOnClickListener();
         //Theme Manager for loading and changing themes of the application
         ThemeManager.setTheme(findViewById(android.R.id.content).getRootView(), getApplicationContext());
         //Set Locale Decimal on Separator Button and cache value
         setLocaleDecimalSeparator();
+        //Results are posted back to the result display
+        this.evaluationService = new EvaluationService(resultDisplay::post);
+    }
+
+    /**
+     * Stops the evaluation worker, a running evaluation has nobody to show its result anymore
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        evaluationService.shutdown();
+    }
+
+    /**
+     * Lets the history write the pending calculations before the application might get killed
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        history.flush();
+    }
+
+    /**
+     * Lets the history write the pending calculations when the application is not visible anymore
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        history.flush();
+    }
+
+    /**
+     * Loads the calculation which got picked on the history screen
+     *
+     * @param requestCode REQUEST_HISTORY for the history screen
+     * @param resultCode  RESULT_OK if a calculation got picked
+     * @param data        intent with the picked HistoryCalculation
+     */
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == REQUEST_HISTORY && resultCode == RESULT_OK && data != null) {
+            HistoryCalculation hc = (HistoryCalculation) data.getSerializableExtra(HistoryActivity.EXTRA_CALCULATION);
+            if (hc != null) {
+                clearAll();
+                loadCalculation(hc);
+            }
+        }
     }
 
     /**
@@ -120,6 +190,9 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
     @Override
     public void onClick(View view) {
         switch (view.getId()) {
+            case R.id.formula:
+                showHistory();
+                break;
             case R.id.btn_separator:
                 separateNumber();
                 break;
@@ -217,6 +290,13 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
         return true;
     }
 
+    /**
+     * Opens the history screen, a picked calculation is loaded in onActivityResult
+     */
+    private void showHistory() {
+        startActivityForResult(new Intent(this, HistoryActivity.class), REQUEST_HISTORY);
+    }
+
     /**
      * just a small toast text for showing information about me :)
      */
@@ -231,8 +311,8 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
         resetFlags();
         formulaDisplay.setText("");
         resultDisplay.setText("");
-        digits.setLength(0);
-        ccs.clear();
+        digits.clear();
+        clearCharacters();
     }
 
     /**
@@ -254,7 +334,7 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
     private void equalsButton() {
         //checkOpenBracket
         for (int i = 0; i < openBracketCount; ++i) {
-            ccs.add(new CalculatorSeparator(CalculatorSeparatorEnum.RightBracket));
+            addCharacter(CalculatorSeparator.valueOf(CalculatorSeparatorEnum.RightBracket));
         }
         openBracketCount = 0;
         endBuildNumber();
@@ -279,7 +359,7 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
     private void bracketRight() {
         endBuildNumber();
         openBracketCount--;
-        ccs.add(new CalculatorSeparator(CalculatorSeparatorEnum.RightBracket));
+        addCharacter(CalculatorSeparator.valueOf(CalculatorSeparatorEnum.RightBracket));
         lastIsBracketClosed = true;
     }
 
@@ -290,9 +370,9 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
         endBuildNumber();
         openBracketCount++;
         if (ccs.size() > 0 && !(ccs.get(ccs.size() - 1) instanceof CalculatorOperation) && !(ccs.get(ccs.size() - 1) instanceof CalculatorSeparator)) {
-            ccs.add(new CalculatorOperation(SupportedOperations.Multiply));
+            addCharacter(CalculatorOperation.valueOf(SupportedOperations.Multiply));
         }
-        ccs.add(new CalculatorSeparator(CalculatorSeparatorEnum.LeftBracket));
+        addCharacter(CalculatorSeparator.valueOf(CalculatorSeparatorEnum.LeftBracket));
     }
 
 
@@ -303,7 +383,7 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
         if (!lastIsFaculty && isBuildingNumber) {
             endBuildNumber();
             lastIsFaculty = true;
-            ccs.add(new CalculatorOperation(SupportedOperations.Faculty));
+            addCharacter(CalculatorOperation.valueOf(SupportedOperations.Faculty));
             //Is in onLongClick -> not called after click on button
             updateFormula();
         }
@@ -312,19 +392,38 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
     /**
      * Loads last calculations with help of history
      * If last calculation is still on display, load before last calculation
+     * While the history is loading, it is done once the history is loaded instead of waiting for the files on the UI thread
      */
     private void LoadLastCalculation() {
-        List<HistoryCalculation> oldCCS = history.read();
-        if (oldCCS.size() > 0 && !ccs.isEmpty()) {
-            ccs.clear();
-            ccs.addAll(history.read().get(history.read().size() - 2).getCalculatorCharacters());
-        } else if (oldCCS.size() > 1) {
-            ccs.addAll(history.read().get(history.read().size() - 1).getCalculatorCharacters());
+        if (!history.isLoaded()) {
+            history.whenLoaded(() -> runOnUiThread(this::LoadLastCalculation));
+            return;
+        }
+        int size = history.size();
+        HistoryCalculation hc;
+        if (size > 1 && !ccs.isEmpty()) {
+            clearCharacters();
+            hc = history.get(size - 2);
+        } else if (size > 1) {
+            hc = history.get(size - 1);
         } else {
             return;
         }
+        if (hc == null) {
+            return;
+        }
+        loadCalculation(hc);
+    }
+
+    /**
+     * Shows the formula of the HistoryCalculation and its result without calculating it again
+     *
+     * @param hc loaded calculation
+     */
+    private void loadCalculation(HistoryCalculation hc) {
+        hc.getCalculatorCharacters().forEach(this::addCharacter);
         updateFormula();
-        calculateInput();
+        calculateInput(hc);
     }
 
     /**
@@ -347,12 +446,12 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
     private void addConstant(SupportedConstant constant) {
         endBuildNumber();
         if (lastIsConstant) {
-            ccs.add(new CalculatorOperation(SupportedOperations.Multiply));
+            addCharacter(CalculatorOperation.valueOf(SupportedOperations.Multiply));
         } else if (ccs.size() > 0 && !(ccs.get(ccs.size() - 1) instanceof CalculatorOperation)) {
-            ccs.add(new CalculatorOperation(SupportedOperations.Multiply));
+            addCharacter(CalculatorOperation.valueOf(SupportedOperations.Multiply));
         }
         lastIsConstant = true;
-        ccs.add(new CalculatorConstant(constant));
+        addCharacter(CalculatorConstant.valueOf(constant));
     }
 
     /**
@@ -363,56 +462,54 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
     private void checkForLastCharIsOperation(SupportedOperations operation) {
         //Checks if last character is CalculatorOperation
         if (ccs.size() > 0 && ccs.get(ccs.size() - 1) instanceof CalculatorOperation) {
-            SupportedOperations lastOperation = ((CalculatorOperation) ccs.remove(ccs.size() - 1)).getOperation();
+            SupportedOperations lastOperation = ((CalculatorOperation) removeLastCharacter()).getOperation();
             //switch between last operations to decide if replace last operation, add needed logically operation or just add the new operation
             switch (lastOperation) {
                 case Add:
                 case Sub:
-                    ccs.add(new CalculatorOperation(operation));
+                    addCharacter(CalculatorOperation.valueOf(operation));
                     break;
                 case Multiply:
                 case Divide:
                     if (operation == SupportedOperations.Sub) {
-                        ccs.add(new CalculatorOperation(lastOperation));
-                        ccs.add(new CalculatorSeparator(CalculatorSeparatorEnum.LeftBracket));
+                        addCharacter(CalculatorOperation.valueOf(lastOperation));
+                        addCharacter(CalculatorSeparator.valueOf(CalculatorSeparatorEnum.LeftBracket));
                         openBracketCount++;
                     }
-                    ccs.add(new CalculatorOperation(operation));
+                    addCharacter(CalculatorOperation.valueOf(operation));
                     break;
                 case Faculty:
-                    ccs.add(new CalculatorOperation(lastOperation));
-                    ccs.add(new CalculatorOperation(operation));
+                    addCharacter(CalculatorOperation.valueOf(lastOperation));
+                    addCharacter(CalculatorOperation.valueOf(operation));
                     lastIsFaculty = false;
                     break;
             }
         } else {
-            ccs.add(new CalculatorOperation(operation));
+            addCharacter(CalculatorOperation.valueOf(operation));
         }
     }
 
     /**
-     *
+     * Adds the decimal separator to the number which is currently build, the separator is shown as placeholder until the next digit
      */
     private void separateNumber() {
         //If is already decimal -> cancel separation
-        if (isDecimal | digits.toString().contains(stringDecimalSeparator)) {
+        if (digits.isDecimal()) {
             return;
-        } else {
-            isDecimal = true;
         }
         //remove last calculatorCharacter (number before decimal conversion)
-        if (ccs.size() > 0) {
-            ccs.remove(ccs.size() - 1);
+        if (isBuildingNumber && ccs.size() > 0) {
+            removeLastCharacter();
         }
         //if there is no number currently being build then start with zero for decimal under one
         if (!isBuildingNumber) {
             isBuildingNumber = true;
-            digits.append("0");
+            digits.appendDigit(0);
         }
-        digits.append('.');
+        digits.appendSeparator();
         hasPlaceholder = true;
-        ccs.add(new CalculatorNumber(new BigDecimal(digits.toString()).stripTrailingZeros()));
-        ccs.add(new CalculatorSeparator(CalculatorSeparatorEnum.DecimalSeparator));
+        addCharacter(digits.toNumber());
+        addCharacter(CalculatorSeparator.valueOf(CalculatorSeparatorEnum.DecimalSeparator));
     }
 
     /**
@@ -422,25 +519,26 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
         resetFlags();
         //Check if ccs is empty
         if (!ccs.isEmpty()) {
-            if (hasPlaceholder) {
-                hasPlaceholder = false;
-                ccs.remove(ccs.size() - 1);
+            //Decimal separator placeholder of the number which is currently build
+            if (isBuildingNumber && digits.endsWithSeparator() && ccs.get(ccs.size() - 1) instanceof CalculatorSeparator) {
+                digits.removeLast();
+                removeLastCharacter();
                 return;
             }
-            //CalculatorNumber - deletes and rebuilds digits
+            //CalculatorNumber - deletes the last digit, a finished number gets edited again
             if (ccs.get(ccs.size() - 1) instanceof CalculatorNumber) {
-                digits = new StringBuilder(((CalculatorNumber) ccs.remove(ccs.size() - 1)).getValue().stripTrailingZeros().toString());
-                if (digits.length() > 1) {
-                    //Check if number was decimal
-                    if (digits.deleteCharAt(digits.length() - 1).toString().charAt(digits.length() - 1) == '.') {
+                CalculatorNumber number = (CalculatorNumber) removeLastCharacter();
+                if ((!isBuildingNumber || digits.isEmpty()) && number.getValue() != null) {
+                    digits.set(number.getValue());
+                }
+                digits.removeLast();
+                isBuildingNumber = !digits.isEmpty();
+                if (isBuildingNumber) {
+                    addCharacter(digits.toNumber());
+                    if (digits.endsWithSeparator()) {
                         hasPlaceholder = true;
+                        addCharacter(CalculatorSeparator.valueOf(CalculatorSeparatorEnum.DecimalSeparator));
                     }
-                    ccs.add(new CalculatorNumber(new BigDecimal(digits.toString()).stripTrailingZeros()));
-                    if (hasPlaceholder) {
-                        ccs.add(new CalculatorSeparator(CalculatorSeparatorEnum.DecimalSeparator));
-                    }
-                } else {
-                    digits.setLength(0);
                 }
             } else {
                 //Brackets - adds or subs of openBracketCounter
@@ -451,7 +549,7 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
                         openBracketCount++;
                     }
                 }
-                ccs.remove(ccs.size() - 1);
+                removeLastCharacter();
             }
         }
     }
@@ -465,90 +563,198 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
         lastIsFaculty = false;
         isCalculated = false;
         hasPlaceholder = false;
-        isDecimal = false;
         resultDisplay.setText("");
     }
 
     /**
-     * ends the building of the current digit into number, resets the flags and the digits StringBuilder
+     * ends the building of the current digit into number, resets the flags and the digits
      */
     private void endBuildNumber() {
         //If ccs is already calculated -> append operation to last ccs and let user reedit ccs
         if (isCalculated) {
             isCalculated = false;
-            ccs.clear();
-            lastCalculation.clear();
-            ccs.add(new CalculatorNumber(lastResult));
+            //Without result (error or cancelled evaluation) the formula stays for editing
+            if (lastResult != null) {
+                clearCharacters();
+                addCharacter(new CalculatorNumber(lastResult));
+            }
         }
-        isDecimal = false;
         isBuildingNumber = false;
-        digits.setLength(0);
+        digits.clear();
     }
 
     /**
-     * Builds the number out of the digits StringBuilder. Checks flags before and acts accordingly
+     * Builds the number out of the digits. Checks flags before and acts accordingly
      *
      * @param number int to append (0-9)
      */
     private void buildNumber(int number) {
-        digits.append(number);
+        digits.appendDigit(number);
         if (lastIsConstant) {
-            ccs.add(new CalculatorOperation(SupportedOperations.Multiply));
+            addCharacter(CalculatorOperation.valueOf(SupportedOperations.Multiply));
             lastIsConstant = false;
         }
         if (lastIsFaculty) {
-            ccs.add(new CalculatorOperation(SupportedOperations.Multiply));
+            addCharacter(CalculatorOperation.valueOf(SupportedOperations.Multiply));
             lastIsFaculty = false;
         }
         if (lastIsBracketClosed) {
             lastIsBracketClosed = false;
-            ccs.add(new CalculatorOperation(SupportedOperations.Multiply));
+            addCharacter(CalculatorOperation.valueOf(SupportedOperations.Multiply));
         }
         if (isCalculated) {
             isCalculated = false;
-            ccs.clear();
+            clearCharacters();
             resultDisplay.setText("");
         }
         if (hasPlaceholder && ccs.size() > 0) {
             hasPlaceholder = false;
-            ccs.remove(ccs.size() - 1);
+            removeLastCharacter();
         }
         if (isBuildingNumber && ccs.size() > 0) {
-            ccs.remove(ccs.size() - 1);
+            removeLastCharacter();
         } else {
             isBuildingNumber = true;
         }
-        if (digits.length() > 0) {
-            ccs.add(new CalculatorNumber(new BigDecimal(digits.toString()).stripTrailingZeros()));
+        if (!digits.isEmpty()) {
+            addCharacter(digits.toNumber());
         }
     }
 
 
     /**
-     * Updates the formula display with the calculatorCharacters in String value format
+     * Appends a calculatorCharacter to the calculatorCharacterList, the validator and the live evaluator
+     *
+     * @param cc appended calculatorCharacter
+     */
+    private void addCharacter(CalculatorCharacter cc) {
+        cancelEvaluation();
+        tokens.add(cc);
+        validator.append(cc);
+        liveEvaluator.append(cc);
+    }
+
+    /**
+     * Removes the last calculatorCharacter of the calculatorCharacterList, the validator and the live evaluator
+     *
+     * @return removed calculatorCharacter
+     */
+    private CalculatorCharacter removeLastCharacter() {
+        cancelEvaluation();
+        validator.removeLast();
+        liveEvaluator.removeLast();
+        return tokens.removeLast();
+    }
+
+    /**
+     * Clears the calculatorCharacterList, the validator and the live evaluator
+     */
+    private void clearCharacters() {
+        cancelEvaluation();
+        tokens.clear();
+        validator.clear();
+        liveEvaluator.clear();
+    }
+
+    /**
+     * Updates the formula display with the calculatorCharacters in String value format and the result display with the live preview
      */
     private void updateFormula() {
         this.formulaDisplay.setText(convertCalculatorCharsToString(ccs));
+        if (!isCalculated) {
+            updatePreview();
+        }
+    }
+
+    /**
+     * Shows the result of the current formula while typing, nothing if the formula can't be calculated (yet)
+     * The validator rejects invalid formulas in O(1), the live evaluator only calculates the changed end of the formula
+     */
+    private void updatePreview() {
+        String preview = "";
+        if (!validator.isValid()) {
+            this.resultDisplay.setText(preview);
+            return;
+        }
+        try {
+            BigDecimal result = liveEvaluator.getResult();
+            //Formatting is superlinear in the digits, a long typed number would slow down every key
+            if (result == null || result.unscaledValue().bitLength() * LOG10_2 - result.scale() <= MAX_PREVIEW_DIGITS) {
+                preview = formatResultToString(result);
+            }
+        } catch (CalculatorException e) {
+            //Incomplete formula -> no preview
+        }
+        this.resultDisplay.setText(preview);
     }
 
     /**
      * tries to calculate the current calculatorCharacterList, handles all exceptions and loads the displays with the result
      */
     private void calculateInput() {
-        lastCalculation.clear();
-        lastCalculation.addAll(ccs);
+        calculateInput(null);
+    }
+
+    /**
+     * Calculates the current calculatorCharacterList inline or in the background (see EvaluationService), the result is shown by showResult()
+     * Uses the saved result of a loaded history calculation instead of calculating the formula again,
+     * other formulas are looked up in the result cache of the calculator first
+     *
+     * @param loaded history calculation which got loaded into ccs, null to calculate the current ccs
+     */
+    private void calculateInput(HistoryCalculation loaded) {
+        cancelEvaluation();
+        lastResult = null;
+        //Evaluated and saved to the history without another copy
+        TokenBuffer snapshot = tokens.snapshot();
+        List<CalculatorCharacter> formula = snapshot.asList();
+        if (loaded != null && loaded.getResult() != null) {
+            showResult(formula, loaded.getResult(), null);
+            return;
+        }
+        CostEstimate.Route route = evaluationService.submit(snapshot, PrecisionPolicy.STANDARD, new EvaluationService.Callback() {
+            @Override
+            public void onResult(BigDecimal result) {
+                resultDisplay.removeCallbacks(showProgress);
+                showResult(formula, result, null);
+            }
+
+            @Override
+            public void onError(CalculatorException e) {
+                resultDisplay.removeCallbacks(showProgress);
+                showResult(formula, null, e);
+            }
+        });
+        if (route == CostEstimate.Route.ASYNC) {
+            resultDisplay.postDelayed(showProgress, PROGRESS_DELAY_MS);
+        }
+    }
+
+    /**
+     * Handles the outcome of a calculation, saves it into the history and loads the result display with it
+     *
+     * @param formula calculated calculatorCharacters
+     * @param result  result of the formula
+     * @param error   exception of the calculation, null if it was calculated
+     */
+    private void showResult(List<CalculatorCharacter> formula, BigDecimal result, CalculatorException error) {
         StringBuilder resultString = new StringBuilder();
         try {
-            lastResult = calculateCCS(lastCalculation);
-            if (lastResult == null) {
+            if (error != null) {
+                throw error;
+            }
+            if (result == null) {
                 throw new MissingFormulaException("");
             }
+            lastResult = result;
             resultString.append(formatResultToString(lastResult));
-            history.addToHistory(new HistoryCalculation(ccs, lastResult));
+            history.addToHistory(new HistoryCalculation(formula, lastResult));
         } catch (DividedByZeroException e) {
             resultString.append(getResources().getString(R.string.exception_divide_by_zero));
         } catch (MissingFormulaException e) {
             resultString.append(getResources().getString(R.string.exception_missing_formula));
+        } catch (LimitExceededException e) {
+            resultString.append(getResources().getString(R.string.exception_limit_exceeded));
         } catch (CalculatorException e) {
             resultString.append(getResources().getString(R.string.exception_bad_expression));
         }
@@ -556,6 +762,17 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
         this.resultDisplay.setText(resultString.toString());
     }
 
+    /**
+     * Cancels the evaluation of the equals button since the formula changed, its result would be outdated
+     */
+    private void cancelEvaluation() {
+        if (evaluationService.isBusy()) {
+            evaluationService.cancel();
+            resultDisplay.removeCallbacks(showProgress);
+            resultDisplay.setText("");
+        }
+    }
+
     /**
      * :3
      *
@@ -628,6 +845,7 @@ public class CalculatorActivity extends AppCompatActivity implements View.OnClic
         resultDisplay = findViewById(R.id.result);
         formulaDisplay = findViewById(R.id.formula);
         resultDisplay.setOnLongClickListener(this);
+        formulaDisplay.setOnClickListener(this);
         formulaDisplay.setOnLongClickListener(this);
     }
 
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.poorskill.poorcalculator.calculator.history.History;
+import com.poorskill.poorcalculator.calculator.history.HistoryCalculation;
+import com.poorskill.poorcalculator.calculator.history.HistoryCursor;
+
+import java.util.function.Consumer;
+
+import static com.poorskill.poorcalculator.calculator.utility.CalculatorConverter.convertCalculatorCharsToString;
+import static com.poorskill.poorcalculator.calculator.utility.CalculatorConverter.formatResultToString;
+
+/**
+ * History screen, lists the calculations newest first and returns the picked one to the CalculatorActivity
+ * The list recycles its rows and reads them through a HistoryCursor, so only the shown pages are decoded
+ */
+public class HistoryActivity extends AppCompatActivity {
+    static final String EXTRA_CALCULATION = "calculation";
+
+    /**
+     * Sets up the list over a cursor of the current history
+     *
+     * @param savedInstanceState
+     */
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.history_activity);
+        History history = History.getInstance(getApplicationContext());
+        if (history.isLoaded()) {
+            showHistory(history);
+        } else {
+            //The list is shown once the history is loaded, the UI thread doesn't wait for the files
+            history.whenLoaded(() -> runOnUiThread(() -> {
+                if (!isFinishing()) {
+                    showHistory(history);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Sets up the list over a cursor of the loaded history
+     *
+     * @param history loaded history
+     */
+    private void showHistory(History history) {
+        HistoryCursor cursor = history.openCursor(HistoryCursor.DEFAULT_PAGE_SIZE);
+        RecyclerView list = findViewById(R.id.history_list);
+        list.setHasFixedSize(true);
+        list.setLayoutManager(new LinearLayoutManager(this));
+        list.setAdapter(new HistoryAdapter(cursor, this::pickCalculation));
+        if (cursor.getCount() == 0) {
+            findViewById(R.id.history_empty).setVisibility(View.VISIBLE);
+        }
+    }
+
+    /**
+     * Returns the picked calculation to the calculator and closes the history screen
+     *
+     * @param hc picked calculation
+     */
+    private void pickCalculation(HistoryCalculation hc) {
+        setResult(RESULT_OK, new Intent().putExtra(EXTRA_CALCULATION, hc));
+        finish();
+    }
+
+    /**
+     * Adapter of the rows, a row shows the formula and the result of one calculation
+     */
+    private static final class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.RowHolder> {
+        private final HistoryCursor cursor;
+        private final Consumer<HistoryCalculation> onPick;
+
+        private HistoryAdapter(HistoryCursor cursor, Consumer<HistoryCalculation> onPick) {
+            this.cursor = cursor;
+            this.onPick = onPick;
+        }
+
+        @Override
+        public RowHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            RowHolder holder = new RowHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.history_item, parent, false));
+            holder.itemView.setOnClickListener(view -> {
+                int row = holder.getAdapterPosition();
+                HistoryCalculation hc = row == RecyclerView.NO_POSITION ? null : cursor.get(row);
+                if (hc != null) {
+                    onPick.accept(hc);
+                }
+            });
+            return holder;
+        }
+
+        @Override
+        public void onBindViewHolder(RowHolder holder, int row) {
+            HistoryCalculation hc = cursor.get(row);
+            //Dropped by the compaction while the screen is open
+            if (hc == null) {
+                holder.formula.setText("");
+                holder.result.setText("");
+                return;
+            }
+            holder.formula.setText(convertCalculatorCharsToString(hc.getCalculatorCharacters()));
+            holder.result.setText(formatResultToString(hc.getResult()));
+        }
+
+        @Override
+        public int getItemCount() {
+            return cursor.getCount();
+        }
+
+        /**
+         * Cached views of a row
+         */
+        private static final class RowHolder extends RecyclerView.ViewHolder {
+            private final TextView formula;
+            private final TextView result;
+
+            private RowHolder(View row) {
+                super(row);
+                this.formula = row.findViewById(R.id.history_formula);
+                this.result = row.findViewById(R.id.history_result);
+            }
+        }
+    }
+}
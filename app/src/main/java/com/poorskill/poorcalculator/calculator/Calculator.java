@@ -23,38 +23,34 @@
 package com.poorskill.poorcalculator.calculator;
 
 import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
-import com.poorskill.poorcalculator.calculator.characters.CalculatorNumber;
-import com.poorskill.poorcalculator.calculator.characters.CalculatorOperation;
-import com.poorskill.poorcalculator.calculator.characters.CalculatorSeparator;
-import com.poorskill.poorcalculator.calculator.characters.CalculatorValues;
-import com.poorskill.poorcalculator.calculator.characters.supported.CalculatorSeparatorEnum;
 import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
 import com.poorskill.poorcalculator.calculator.exceptions.BadExpressionException;
 import com.poorskill.poorcalculator.calculator.exceptions.CalculatorException;
+import com.poorskill.poorcalculator.calculator.exceptions.CancelledException;
 import com.poorskill.poorcalculator.calculator.exceptions.DividedByZeroException;
+import com.poorskill.poorcalculator.calculator.exceptions.LimitExceededException;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * UtilityClass Calculator which is the heart of the application as tool
  */
 public final class Calculator {
-    //BigDecimal Division Scale set to fixed value since this is only a project for learning and not an scientific program
-    private static final int DIVIDE_SCALE = 100;
+    private static final ResultCache RESULT_CACHE = new ResultCache(ResultCache.DEFAULT_MAX_ENTRIES, ResultCache.DEFAULT_MAX_WEIGHT);
 
     /**
      * Calculates single operation of the given params and returns result as BigDecimal
+     * Divisions and products with decimal places are rounded to the working precision of the policy
      *
      * @param operation supported operations (not faculty)
      * @param x         first value in BigDecimal
      * @param y         second value in BigDecimal
+     * @param policy    precision policy of the evaluation
      * @return result of x operation y as BigDecimal
      * @throws DividedByZeroException if second value is 0 for multiplying
      */
-    private static BigDecimal calculateSingleOperation(SupportedOperations operation, BigDecimal x, BigDecimal y) throws DividedByZeroException, BadExpressionException {
+    static BigDecimal calculateSingleOperation(SupportedOperations operation, BigDecimal x, BigDecimal y, PrecisionPolicy policy) throws DividedByZeroException, BadExpressionException {
         if (x == null || y == null) {
             throw new BadExpressionException();
         }
@@ -64,186 +60,122 @@ public final class Calculator {
             case Sub:
                 return x.subtract(y);
             case Multiply:
-                return x.multiply(y);
+                return policy.roundIntermediate(x.multiply(y));
             case Divide:
-                if (y.equals(BigDecimal.ZERO)) {
+                if (y.signum() == 0) {
                     throw new DividedByZeroException();
                 }
-                return x.divide(y, DIVIDE_SCALE, RoundingMode.HALF_UP);
+                return policy.divide(x, y);
         }
         return x;
     }
 
     /**
-     * Calculates recursive the given List of calculator characters and returns the result as BigDecimal
+     * Calculates the given List of calculator characters with PrecisionPolicy.STANDARD and returns the result as BigDecimal
+     * The formula gets compiled into postfix order with one pass and then evaluated with one more pass, the list itself is not modified
      *
      * @param ccs Formula as List of CalculatorCharacters
-     * @return evaluation of ccs' formula
+     * @return evaluation of ccs' formula, null if the formula contains no values
      * @throws CalculatorException called functions can call CalculatorExceptions -> passed on to function call to process exceptions
      */
     public static BigDecimal calculateCCS(List<CalculatorCharacter> ccs) throws CalculatorException {
-        SupportedOperations lastOp = null;
-        BigDecimal xBD = null, yBD;
-        //Checks if CalculatorCharacterList contains any faculty and priorities calculates it into an number value
-        if (ccs.stream().filter(cc -> cc instanceof CalculatorOperation).anyMatch(cc -> ((CalculatorOperation) cc).getOperation() == SupportedOperations.Faculty)) {
-            calculateFaculty(ccs);
-        }
-        //Checks if CalculatorCharacterList contains any instance of CalculatorSeparator
-        // if true splits down to separator
-        if (ccs.stream().anyMatch(cc -> cc instanceof CalculatorSeparator)) {
-            filterOutSeparatorOperations(ccs);
-        }
-        //Checks if CalculatorCharacterList contains any instance of prioritised operations (multiply and divide)
-        if (ccs.stream().filter(cc -> cc instanceof CalculatorOperation).anyMatch(cc -> ((CalculatorOperation) cc).getOperation() == SupportedOperations.Multiply || ((CalculatorOperation) cc).getOperation() == SupportedOperations.Divide)) {
-            filterOutPrioritisedOperations(ccs);
-        }
-        return calculateSubValue(ccs);
+        return calculateCCS(ccs, PrecisionPolicy.STANDARD);
     }
 
-
     /**
-     * Calculates faculty of input BigDecimal with while loop
+     * Calculates the given List of calculator characters with the given precision policy and returns the result as BigDecimal
+     * Results are kept in the ResultCache, calculating the same formula again returns the cached result
      *
-     * @param input faculty of as BigDecimal
-     * @return the faculty value
+     * @param ccs    Formula as List of CalculatorCharacters
+     * @param policy precision policy of the evaluation (eg. PrecisionPolicy.EXTENDED for exact work)
+     * @return evaluation of ccs' formula, null if the formula contains no values
+     * @throws CalculatorException called functions can call CalculatorExceptions -> passed on to function call to process exceptions
      */
-    private static BigDecimal getFaculty(BigDecimal input) {
-        BigDecimal result = input, restValue = input;
-        if (input.equals(BigDecimal.ZERO)) {
-            return BigDecimal.ONE;
-        }
-        while (restValue.longValue() > 1) {
-            result = result.multiply(restValue = restValue.subtract(BigDecimal.ONE));
+    public static BigDecimal calculateCCS(List<CalculatorCharacter> ccs, PrecisionPolicy policy) throws CalculatorException {
+        FormulaKey key = new FormulaKey(ccs, policy);
+        BigDecimal result = RESULT_CACHE.get(key);
+        if (result == null) {
+            result = compile(ccs).evaluate(policy);
+            if (result != null) {
+                RESULT_CACHE.put(key, result);
+            }
         }
         return result;
     }
 
     /**
-     * Strips down the giving calculatorCharacterList to fill in the getFaculty() function and returns the list with the faculty exchanged for the actual number value in BigDecimal
+     * Calculates the already compiled formula like calculateCCS(), the result is kept in the ResultCache as well
      *
-     * @param ccs calculatorCharacterList which contains operation faculty
-     * @return calculatorCharacterList with the operation faculty replaced with the number value in BigDecimal
+     * @param ccs    Formula as List of CalculatorCharacters, key of the result in the cache
+     * @param plan   compiled ccs
+     * @param policy precision policy of the evaluation
+     * @return evaluation of ccs' formula, null if the formula contains no values
+     * @throws CalculatorException called functions can call CalculatorExceptions -> passed on to function call to process exceptions
      */
-    private static List<CalculatorCharacter> calculateFaculty(List<CalculatorCharacter> ccs) {
-        for (int i = 1; i < ccs.size(); ++i) {
-            if (ccs.get(i) instanceof CalculatorOperation) {
-                if (((CalculatorOperation) ccs.get(i)).getOperation() == SupportedOperations.Faculty) {
-                    if (ccs.get(i - 1) instanceof CalculatorNumber) {
-                        ccs.remove(i);
-                        ccs.add(i, new CalculatorNumber(getFaculty(((CalculatorNumber) ccs.get(i - 1)).getValue())));
-                        ccs.remove(i - 1);
-                        break;
-                    }
-                }
+    static BigDecimal calculatePlan(List<CalculatorCharacter> ccs, ExpressionPlan plan, PrecisionPolicy policy) throws CalculatorException {
+        FormulaKey key = new FormulaKey(ccs, policy);
+        BigDecimal result = RESULT_CACHE.get(key);
+        if (result == null) {
+            result = plan.evaluate(policy);
+            if (result != null) {
+                RESULT_CACHE.put(key, result);
             }
         }
-        return ccs;
+        return result;
     }
 
+    /**
+     * Returns true if calculateCCS() would return the result of the formula out of the ResultCache
+     *
+     * @param ccs    Formula as List of CalculatorCharacters
+     * @param policy precision policy of the evaluation
+     * @return true if the result is cached
+     */
+    static boolean isCached(List<CalculatorCharacter> ccs, PrecisionPolicy policy) {
+        return RESULT_CACHE.contains(new FormulaKey(ccs, policy));
+    }
 
     /**
-     * Filters the prioritised operations (multiply, division,(without faculty, since this operations is already handled)) and calls recursive calculation of sublist of calculatorCharacterList
+     * Returns the cache of calculateCCS() for reading its counters or clearing it
      *
-     * @param ccs calculatorCharacterList which contains prioritised operations
-     * @return calculatorCharacterList with the prioritised operations replaced with number values
-     * @throws BadExpressionException if there are operation characters miss-placed or not logical
-     * @throws DividedByZeroException if calculateValue(->calculateSingleOperation()) detects division by zero
+     * @return result cache
      */
-    private static List<CalculatorCharacter> filterOutPrioritisedOperations(List<CalculatorCharacter> ccs) throws BadExpressionException, DividedByZeroException {
-        int indexLeft = -1, indexRight = -1;
-        for (int i = 1; i < ccs.size(); ++i) {
-            if (ccs.get(i) instanceof CalculatorOperation) {
-                if (((CalculatorOperation) ccs.get(i)).getOperation() == SupportedOperations.Multiply || ((CalculatorOperation) ccs.get(i)).getOperation() == SupportedOperations.Divide) {
-                    indexLeft = i - 1;
-                    indexRight = i + 2;
-                    if (ccs.size() > i + 2 && ccs.get(i + 1) instanceof CalculatorOperation) {
-                        if (((CalculatorOperation) ccs.get(i + 1)).getOperation() == SupportedOperations.Sub) {
-                            indexRight++;
-                        } else if (((CalculatorOperation) ccs.get(i + 1)).getOperation() == SupportedOperations.Divide || ((CalculatorOperation) ccs.get(i + 1)).getOperation() == SupportedOperations.Multiply) {
-                            throw new BadExpressionException();
-                        }
-                    }
-                }
-            }
-        }
-        if (indexRight > ccs.size()) {
-            throw new BadExpressionException();
-        }
-        if (indexLeft > -1 && indexRight > -1) {
-            ArrayList<CalculatorCharacter> ccsPartList = new ArrayList<>(ccs.subList(indexLeft, indexRight));
-            ccs.remove(indexLeft);
-            ccs.add(indexLeft, new CalculatorNumber(calculateSubValue(ccsPartList)));
-            ccs.subList(indexLeft + 1, indexRight).clear();
-            return filterOutPrioritisedOperations(ccs);
-        }
+    public static ResultCache getResultCache() {
+        return RESULT_CACHE;
+    }
 
-        return ccs;
+    /**
+     * Compiles the given List of calculator characters into an immutable ExpressionPlan which can be evaluated any number of times
+     *
+     * @param ccs Formula as List of CalculatorCharacters (not modified)
+     * @return compiled formula
+     * @throws BadExpressionException if there are operation characters miss-placed or not logical
+     */
+    public static ExpressionPlan compile(List<CalculatorCharacter> ccs) throws BadExpressionException {
+        return ExpressionCompiler.compile(ccs);
     }
 
     /**
-     * reads out given calculatorCharacterList to fill calculateSingleOperation(), calculates every single operation and number and returns result as BigDecimal
+     * Compiles the formula of the TokenBuffer into an immutable ExpressionPlan
      *
-     * @param ccs calculatorCharacterList with operations
-     * @return calculatorCharacterList evaluations as BigDecimal
-     * @throws DividedByZeroException if calculateSingleOperation()detects division by zero
+     * @param tokens Formula as TokenBuffer (not modified)
+     * @return compiled formula
      * @throws BadExpressionException if there are operation characters miss-placed or not logical
      */
-    private static BigDecimal calculateSubValue(List<CalculatorCharacter> ccs) throws DividedByZeroException, BadExpressionException {
-        SupportedOperations lastOp = null;
-        BigDecimal xBD = null, yBD;
-        for (int i = 0; i < ccs.size(); ++i) {
-            if (ccs.get(i) instanceof CalculatorValues) {
-                if (xBD == null) {
-                    xBD = ((CalculatorValues) ccs.get(i)).getValue();
-                    if (lastOp == SupportedOperations.Sub) {
-                        xBD = xBD.negate();
-                        lastOp = null;
-                    } else if (lastOp != null) {
-                        throw new BadExpressionException();
-                    }
-                } else {
-                    yBD = ((CalculatorValues) ccs.get(i)).getValue();
-                    if (lastOp != null) {
-                        xBD = calculateSingleOperation(lastOp, xBD, yBD);
-                        lastOp = null;
-                    }
-                }
-            } else if (lastOp == null && ccs.get(i) instanceof CalculatorOperation) {
-                lastOp = ((CalculatorOperation) ccs.get(i)).getOperation();
-            }
-        }
-        return xBD;
+    public static ExpressionPlan compile(TokenBuffer tokens) throws BadExpressionException {
+        return ExpressionCompiler.compile(tokens);
     }
 
     /**
-     * Filters out sub-lists of given calculatorCharacterList and calculates recursive
-     * Returns the list if no more separators are found
+     * Calculates faculty of input BigDecimal with the current FacultyEngine
      *
-     * @param ccs
-     * @return calculatorCharacterList with separator-sub-lists replaced with BigDecimal number values
-     * @throws CalculatorException if calculateCCS() recursive call gives back exception
+     * @param input faculty of as BigDecimal
+     * @return the faculty value
+     * @throws LimitExceededException if the input is above the limit of the engine
+     * @throws CancelledException     if the thread got interrupted
      */
-    private static List<CalculatorCharacter> filterOutSeparatorOperations(List<CalculatorCharacter> ccs) throws CalculatorException {
-        int indexLeft = -1, indexRight = -1;
-        for (int i = 0; i < ccs.size(); ++i) {
-            if (ccs.get(i) instanceof CalculatorSeparator) {
-                //Updates with latest left Bracket
-                if (((CalculatorSeparator) ccs.get(i)).getSeparator() == CalculatorSeparatorEnum.LeftBracket) {
-                    indexLeft = i;
-                } else if (((CalculatorSeparator) ccs.get(i)).getSeparator() == CalculatorSeparatorEnum.RightBracket) {
-                    indexRight = i;
-                    break;
-                }
-            }
-        }
-        if (indexLeft > -1 && indexRight > -1) {
-            ArrayList<CalculatorCharacter> ccsPartList = new ArrayList<>(ccs.subList(indexLeft + 1, indexRight));
-            ccs.remove(indexLeft);
-            ccs.add(indexLeft, new CalculatorNumber(calculateCCS(ccsPartList)));
-            ccs.subList(indexLeft + 1, indexRight + 1).clear();
-            return filterOutSeparatorOperations(ccs);
-        }
-        return ccs;
+    static BigDecimal getFaculty(BigDecimal input) throws LimitExceededException, CancelledException {
+        return FacultyEngine.getCurrent().getFaculty(input);
     }
 
     /**
@@ -0,0 +1,197 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedConstant;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provides the supported constants with any precision
+ * <p>
+ * π is calculated with the Chudnovsky series and e with the series of 1/k!, both summed up with binary splitting.
+ * The digits are calculated once and only extended (at least doubled) if a higher precision is requested,
+ * values rounded to a precision are cached too, so using a constant again costs a map lookup.
+ * Thread-safe, concurrent evaluations share the cache.
+ */
+public final class ConstantProvider {
+    //Additional digits of the calculation, so rounding the cached value to the requested precision is correct
+    private static final int GUARD_DIGITS = 10;
+    private static final Cache PI = new Cache(SupportedConstant.Pi);
+    private static final Cache E = new Cache(SupportedConstant.E);
+
+    //Chudnovsky constants
+    private static final BigInteger CHUDNOVSKY_A = BigInteger.valueOf(13591409);
+    private static final BigInteger CHUDNOVSKY_B = BigInteger.valueOf(545140134);
+    private static final BigInteger CHUDNOVSKY_C3_24 = BigInteger.valueOf(640320).pow(3).divide(BigInteger.valueOf(24));
+    //Each Chudnovsky term adds about 14.18 digits
+    private static final double DIGITS_PER_TERM = 14.18;
+
+    private ConstantProvider() {
+    }
+
+    /**
+     * Returns the constant rounded to the precision of the MathContext
+     *
+     * @param constant supported constant
+     * @param mc       precision and rounding mode
+     * @return value of the constant
+     */
+    public static BigDecimal getValue(SupportedConstant constant, MathContext mc) {
+        switch (constant) {
+            case Pi:
+                return PI.get(mc);
+            case E:
+                return E.get(mc);
+        }
+        return null;
+    }
+
+    /**
+     * Cached value of one constant, extended on demand
+     */
+    private static final class Cache {
+        private final SupportedConstant constant;
+        private final ConcurrentHashMap<MathContext, BigDecimal> rounded = new ConcurrentHashMap<>();
+        //Value with at least digits correct digits, replaced as a whole so readers never see a half extended value
+        private volatile BigDecimal value;
+        private volatile int digits;
+
+        private Cache(SupportedConstant constant) {
+            this.constant = constant;
+        }
+
+        private BigDecimal get(MathContext mc) {
+            BigDecimal result = rounded.get(mc);
+            if (result == null) {
+                result = getExact(mc.getPrecision() + GUARD_DIGITS).round(mc);
+                rounded.putIfAbsent(mc, result);
+            }
+            return result;
+        }
+
+        private BigDecimal getExact(int precision) {
+            if (digits < precision) {
+                synchronized (this) {
+                    if (digits < precision) {
+                        int newDigits = Math.max(precision, digits * 2);
+                        value = constant == SupportedConstant.Pi ? calculatePi(newDigits) : calculateE(newDigits);
+                        digits = newDigits;
+                    }
+                }
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Calculates π = 426880 * √10005 * Q / (13591409 * Q + T) with the Chudnovsky series
+     *
+     * @param digits correct significant digits
+     * @return π with at least digits correct digits
+     */
+    static BigDecimal calculatePi(int digits) {
+        int precision = digits + GUARD_DIGITS;
+        int terms = (int) (precision / DIGITS_PER_TERM) + 2;
+        BigInteger[] pqt = splitPi(1, terms);
+        BigInteger q = pqt[1], t = pqt[2];
+        MathContext mc = new MathContext(precision);
+        BigDecimal numerator = new BigDecimal(BigInteger.valueOf(426880).multiply(q)).multiply(sqrt(10005, precision), mc);
+        BigDecimal denominator = new BigDecimal(CHUDNOVSKY_A.multiply(q).add(t));
+        return numerator.divide(denominator, mc);
+    }
+
+    /**
+     * Binary splitting of the Chudnovsky series terms a..b-1 (a > 0, the first term is part of the formula)
+     *
+     * @return {P(a,b), Q(a,b), T(a,b)}
+     */
+    private static BigInteger[] splitPi(int a, int b) {
+        if (b - a == 1) {
+            long k = a;
+            BigInteger p = BigInteger.valueOf(6 * k - 5).multiply(BigInteger.valueOf(2 * k - 1)).multiply(BigInteger.valueOf(6 * k - 1));
+            BigInteger q = BigInteger.valueOf(k).pow(3).multiply(CHUDNOVSKY_C3_24);
+            BigInteger t = p.multiply(CHUDNOVSKY_A.add(CHUDNOVSKY_B.multiply(BigInteger.valueOf(k))));
+            return new BigInteger[]{p, q, (k & 1) == 1 ? t.negate() : t};
+        }
+        int m = (a + b) >>> 1;
+        BigInteger[] left = splitPi(a, m), right = splitPi(m, b);
+        return new BigInteger[]{
+                left[0].multiply(right[0]),
+                left[1].multiply(right[1]),
+                left[2].multiply(right[1]).add(left[0].multiply(right[2]))
+        };
+    }
+
+    /**
+     * Calculates e = 1 + P/Q with the series of 1/k!
+     *
+     * @param digits correct significant digits
+     * @return e with at least digits correct digits
+     */
+    static BigDecimal calculateE(int digits) {
+        int precision = digits + GUARD_DIGITS;
+        //Terms until k! > 10^precision
+        int terms = 1;
+        for (double log = 0; log <= precision; log += Math.log10(++terms)) {
+        }
+        BigInteger[] pq = splitE(0, terms);
+        return BigDecimal.ONE.add(new BigDecimal(pq[0]).divide(new BigDecimal(pq[1]), new MathContext(precision)));
+    }
+
+    /**
+     * Binary splitting of the sum of (a+1)...b / (a+1)...k for k = a+1..b, the sum of 1/k! from 1 to b for a = 0
+     *
+     * @return {P(a,b), Q(a,b)}
+     */
+    private static BigInteger[] splitE(int a, int b) {
+        if (b - a == 1) {
+            return new BigInteger[]{BigInteger.ONE, BigInteger.valueOf(b)};
+        }
+        int m = (a + b) >>> 1;
+        BigInteger[] left = splitE(a, m), right = splitE(m, b);
+        return new BigInteger[]{left[0].multiply(right[1]).add(right[0]), left[1].multiply(right[1])};
+    }
+
+    /**
+     * Square root of an integer with Newton's method on BigInteger
+     *
+     * @param n         radicand
+     * @param precision significant digits
+     * @return √n rounded down to precision digits
+     */
+    private static BigDecimal sqrt(long n, int precision) {
+        BigInteger scaled = BigInteger.valueOf(n).multiply(BigInteger.TEN.pow(2 * precision));
+        BigInteger x = BigInteger.ONE.shiftLeft(scaled.bitLength() / 2 + 1);
+        while (true) {
+            BigInteger next = x.add(scaled.divide(x)).shiftRight(1);
+            if (next.compareTo(x) >= 0) {
+                return new BigDecimal(x, precision);
+            }
+            x = next;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+/**
+ * Immutable estimate of the work and the size of the result of an ExpressionPlan, made by the CostEstimator
+ */
+public final class CostEstimate {
+    /**
+     * Where a formula is calculated
+     */
+    public enum Route {
+        //Cheap, calculated right away on the calling thread
+        INLINE,
+        //Calculated on a worker thread
+        ASYNC,
+        //Would take too long or get too big, not calculated at all
+        REFUSE
+    }
+
+    private final double cost;
+    private final double resultBits;
+    private final int multiplications;
+    private final int divisions;
+    private final int faculties;
+    private final Route route;
+
+    /**
+     * Constructor for setting up an estimate
+     *
+     * @param cost            estimated word operations of the evaluation
+     * @param resultBits      estimated bit length of the unscaled result
+     * @param multiplications amount of multiplications
+     * @param divisions       amount of divisions
+     * @param faculties       amount of faculties
+     * @param route           where the formula should be calculated
+     */
+    CostEstimate(double cost, double resultBits, int multiplications, int divisions, int faculties, Route route) {
+        this.cost = cost;
+        this.resultBits = resultBits;
+        this.multiplications = multiplications;
+        this.divisions = divisions;
+        this.faculties = faculties;
+        this.route = route;
+    }
+
+    public double getCost() {
+        return this.cost;
+    }
+
+    public double getResultBits() {
+        return this.resultBits;
+    }
+
+    public int getMultiplications() {
+        return this.multiplications;
+    }
+
+    public int getDivisions() {
+        return this.divisions;
+    }
+
+    public int getFaculties() {
+        return this.faculties;
+    }
+
+    public Route getRoute() {
+        return this.route;
+    }
+
+    @Override
+    public String toString() {
+        return "CostEstimate{cost=" + cost + ", resultBits=" + resultBits + ", multiplications=" + multiplications + ", divisions=" + divisions
+                + ", faculties=" + faculties + ", route=" + route + '}';
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.exceptions.LimitExceededException;
+
+import java.math.BigDecimal;
+
+/**
+ * Static cost model of a compiled formula, decides if it is calculated inline, asynchronously or not at all
+ * <p>
+ * Walks the postfix order of the ExpressionPlan once with a stack of operand estimates instead of values:
+ * an upper bound of log2 of the value, the bit length of its unscaled value and whether it is an integer.
+ * <ul>
+ * <li>Additions cost the words of the operands, the result gets one bit more</li>
+ * <li>Multiplications add the bit lengths of the operands (integer products are exact), products with decimal places are rounded
+ * to the working precision. They cost the product of the words (Karatsuba above the threshold of BigInteger)</li>
+ * <li>Divisions round to the working precision and cost a long division of the operands, an exact integer quotient is checked too.
+ * Big dividends cost a multiplication of their own size more, since BigDecimal counts their digits with powers of ten</li>
+ * <li>n! has log2(n!) bits (Stirling) and costs a few multiplications of that size. Values with decimal places are multiplied down
+ * step by step, so they cost n multiplications of a growing value. n is the literal if the operand is one, the upper bound otherwise</li>
+ * </ul>
+ * The cost is in 64 bit word operations, with the overhead of BigDecimal about ten nanoseconds each. The estimate is rough on purpose,
+ * it only has to separate formulas of microseconds from the ones of seconds and the ones which would never finish.
+ */
+public final class CostEstimator {
+    //Below a millisecond, stays on the UI thread without a noticeable delay
+    public static final double DEFAULT_INLINE_LIMIT = 5e4;
+    //About ten seconds on the worker thread
+    public static final double DEFAULT_ASYNC_LIMIT = 1e9;
+    //About a million digits, more can't be shown anyway
+    public static final double DEFAULT_MAX_RESULT_BITS = 1 << 22;
+    public static final CostEstimator DEFAULT = new CostEstimator(DEFAULT_INLINE_LIMIT, DEFAULT_ASYNC_LIMIT, DEFAULT_MAX_RESULT_BITS);
+
+    private static final double LOG2_10 = Math.log(10) / Math.log(2);
+    private static final double LOG2_E = 1 / Math.log(2);
+    private static final int WORD_BITS = 64;
+    //Allocation and dispatch of every instruction
+    private static final double INSTRUCTION_COST = 16;
+    //Words of BigInteger.multiply() above which Karatsuba is used
+    private static final int KARATSUBA_WORDS = 40;
+    private static final double KARATSUBA_EXPONENT = Math.log(3) / Math.log(2);
+
+    private final double inlineLimit;
+    private final double asyncLimit;
+    private final double maxResultBits;
+
+    /**
+     * Constructor for setting up an estimator
+     *
+     * @param inlineLimit   highest cost which is calculated inline
+     * @param asyncLimit    highest cost which is calculated at all
+     * @param maxResultBits highest bit length of a result (or intermediate value) which is calculated at all
+     */
+    public CostEstimator(double inlineLimit, double asyncLimit, double maxResultBits) {
+        if (inlineLimit < 0 || asyncLimit < inlineLimit || maxResultBits < 0) {
+            throw new IllegalArgumentException("limits must not be negative and inlineLimit must not be above asyncLimit");
+        }
+        this.inlineLimit = inlineLimit;
+        this.asyncLimit = asyncLimit;
+        this.maxResultBits = maxResultBits;
+    }
+
+    /**
+     * Estimates the evaluation of the plan, doesn't calculate anything
+     *
+     * @param plan   compiled formula
+     * @param policy precision policy of the evaluation
+     * @return estimate with the route of the formula
+     */
+    public CostEstimate estimate(ExpressionPlan plan, PrecisionPolicy policy) {
+        int length = plan.getLength();
+        double workingBits = policy.getWorkingContext().getPrecision() * LOG2_10;
+        //Operand estimates as parallel stacks
+        double[] magnitudes = new double[length + 1];
+        double[] bits = new double[length + 1];
+        boolean[] integers = new boolean[length + 1];
+        BigDecimal[] literals = new BigDecimal[length + 1];
+        int size = 0;
+        double cost = 0;
+        double largestBits = 0;
+        int multiplications = 0, divisions = 0, faculties = 0;
+        for (int i = 0; i < length; ++i) {
+            byte instruction = plan.getInstruction(i);
+            cost += INSTRUCTION_COST;
+            switch (instruction) {
+                case ExpressionPlan.LONG_VALUE:
+                case ExpressionPlan.BIG_VALUE: {
+                    BigDecimal value = plan.getValue(i);
+                    magnitudes[size] = Math.max(0, value.precision() - value.scale()) * LOG2_10;
+                    bits[size] = Math.max(1, value.unscaledValue().bitLength());
+                    integers[size] = value.signum() == 0 || value.stripTrailingZeros().scale() <= 0;
+                    literals[size] = value;
+                    ++size;
+                    break;
+                }
+                case ExpressionPlan.CONSTANT:
+                    magnitudes[size] = 2;
+                    bits[size] = workingBits;
+                    integers[size] = false;
+                    literals[size] = null;
+                    ++size;
+                    break;
+                case ExpressionPlan.MISSING_VALUE:
+                    //Fails right away
+                    return new CostEstimate(cost, 0, multiplications, divisions, faculties, CostEstimate.Route.INLINE);
+                case ExpressionPlan.NEGATE:
+                    if (size > 0) {
+                        cost += getWords(bits[size - 1]);
+                        literals[size - 1] = null;
+                    }
+                    break;
+                case ExpressionPlan.FACULTY:
+                    if (size > 0) {
+                        int x = size - 1;
+                        ++faculties;
+                        double n = getFacultyInput(magnitudes[x], literals[x]);
+                        double scaleBits = literals[x] != null ? Math.max(0, literals[x].scale()) * LOG2_10 : workingBits;
+                        double resultBits = getFacultyBits(n);
+                        if (integers[x]) {
+                            //Prime swing or product tree: a few products of half the result size
+                            cost += 4 * getMultiplyCost(resultBits / 2, resultBits / 2) + n;
+                        } else {
+                            //Multiplied down step by step, the scale grows with every step
+                            resultBits += n * scaleBits;
+                            cost += n * getWords(resultBits) / 2;
+                        }
+                        magnitudes[x] = getFacultyBits(n);
+                        bits[x] = resultBits;
+                        literals[x] = null;
+                    }
+                    break;
+                default:
+                    if (size < 2) {
+                        //Compiler doesn't create such plans, evaluate() reports it
+                        return new CostEstimate(cost, 0, multiplications, divisions, faculties, CostEstimate.Route.INLINE);
+                    }
+                    int y = --size;
+                    int x = size - 1;
+                    if (instruction == ExpressionPlan.MULTIPLY) {
+                        ++multiplications;
+                        cost += getMultiplyCost(bits[x], bits[y]);
+                        boolean integer = integers[x] && integers[y];
+                        bits[x] = integer ? bits[x] + bits[y] : Math.min(bits[x] + bits[y], workingBits);
+                        magnitudes[x] += magnitudes[y];
+                        integers[x] = integer;
+                    } else if (instruction == ExpressionPlan.DIVIDE) {
+                        ++divisions;
+                        //Division with the working precision and the check for an exact integer quotient
+                        cost += 2 * getMultiplyCost(Math.max(bits[x], workingBits), bits[y]);
+                        if (bits[x] > workingBits) {
+                            cost += 4 * getMultiplyCost(bits[x], bits[x]);
+                        }
+                        bits[x] = Math.max(workingBits, bits[x] - bits[y]);
+                        //Divisors below one make the value bigger
+                        magnitudes[x] += bits[y];
+                        integers[x] = false;
+                    } else {
+                        cost += getWords(Math.max(bits[x], bits[y]));
+                        bits[x] = Math.max(bits[x], bits[y]) + 1;
+                        magnitudes[x] = Math.max(magnitudes[x], magnitudes[y]) + 1;
+                        integers[x] = integers[x] && integers[y];
+                    }
+                    literals[x] = null;
+            }
+            if (size > 0) {
+                largestBits = Math.max(largestBits, bits[size - 1]);
+            }
+        }
+        double resultBits = size > 0 ? bits[size - 1] : 0;
+        return new CostEstimate(cost, resultBits, multiplications, divisions, faculties, getRoute(cost, largestBits));
+    }
+
+    /**
+     * Estimates the plan and throws if it is refused
+     *
+     * @param plan   compiled formula
+     * @param policy precision policy of the evaluation
+     * @return estimate with the route INLINE or ASYNC
+     * @throws LimitExceededException if the formula would take too long or get too big
+     */
+    public CostEstimate check(ExpressionPlan plan, PrecisionPolicy policy) throws LimitExceededException {
+        CostEstimate estimate = estimate(plan, policy);
+        if (estimate.getRoute() == CostEstimate.Route.REFUSE) {
+            throw new LimitExceededException("Estimated cost of " + (long) estimate.getCost() + " word operations and " + (long) estimate.getResultBits()
+                    + " result bits is above the limit");
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns true if the faculty of the value is cheap enough for the inline path
+     *
+     * @param input operand of the faculty
+     * @return true if input! costs at most the inline limit
+     */
+    public boolean isInlineFaculty(BigDecimal input) {
+        if (input.signum() <= 0) {
+            return true;
+        }
+        double n = input.doubleValue();
+        double resultBits = getFacultyBits(n);
+        double cost;
+        if (Calculator.isIntegerValue(input)) {
+            cost = 4 * getMultiplyCost(resultBits / 2, resultBits / 2) + n;
+        } else {
+            cost = n * getWords(resultBits + n * Math.max(0, input.scale()) * LOG2_10) / 2;
+        }
+        return cost <= inlineLimit;
+    }
+
+    private CostEstimate.Route getRoute(double cost, double largestBits) {
+        if (cost > asyncLimit || largestBits > maxResultBits) {
+            return CostEstimate.Route.REFUSE;
+        }
+        return cost > inlineLimit ? CostEstimate.Route.ASYNC : CostEstimate.Route.INLINE;
+    }
+
+    /**
+     * Returns the operand of a faculty: the literal or the upper bound of the value, at most the limit of the engine (above it fails right away)
+     */
+    private static double getFacultyInput(double magnitude, BigDecimal literal) {
+        double limit = FacultyEngine.getCurrent().getLimit();
+        if (literal != null) {
+            double n = literal.doubleValue();
+            return n > limit ? 0 : Math.max(0, n);
+        }
+        return Math.min(limit, Math.pow(2, magnitude));
+    }
+
+    /**
+     * Returns log2(n!) with the Stirling formula
+     */
+    static double getFacultyBits(double n) {
+        if (n < 2) {
+            return 1;
+        }
+        return n * Math.log(n) * LOG2_E - n * LOG2_E + 0.5 * Math.log(2 * Math.PI * n) * LOG2_E + 1;
+    }
+
+    private static double getWords(double bits) {
+        return Math.ceil(bits / WORD_BITS);
+    }
+
+    private static double getMultiplyCost(double xBits, double yBits) {
+        double x = getWords(xBits), y = getWords(yBits);
+        if (Math.min(x, y) < KARATSUBA_WORDS) {
+            return x * y;
+        }
+        //Karatsuba splits the bigger operand into pieces of the smaller one
+        return Math.max(x, y) / Math.min(x, y) * Math.pow(Math.min(x, y), KARATSUBA_EXPONENT);
+    }
+}
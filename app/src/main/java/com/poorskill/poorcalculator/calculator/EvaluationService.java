@@ -0,0 +1,217 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.exceptions.BadExpressionException;
+import com.poorskill.poorcalculator.calculator.exceptions.CalculatorException;
+import com.poorskill.poorcalculator.calculator.exceptions.CancelledException;
+import com.poorskill.poorcalculator.calculator.exceptions.LimitExceededException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Calculates formulas and hands the results to a callback executor (eg. the UI thread)
+ * <p>
+ * The CostEstimator routes every formula: cheap and cached ones are calculated inline and their callback is called right away
+ * by submit(), expensive ones are calculated on a worker thread and formulas which would take too long or get too big are refused
+ * with a LimitExceededException without calculating them.
+ * <p>
+ * Only the newest formula matters: submitting a formula cancels the one before. The cancelled evaluation is interrupted
+ * and stops at the next reduction with a CancelledException, its result is never delivered even if it was done already.
+ */
+public final class EvaluationService {
+    /**
+     * Receives the outcome of an evaluation on the callback executor
+     */
+    public interface Callback {
+        /**
+         * Called with the result of the formula
+         *
+         * @param result evaluation of the formula, null if the formula contains no values
+         */
+        void onResult(BigDecimal result);
+
+        /**
+         * Called if the formula can't be calculated
+         *
+         * @param e exception of the calculation
+         */
+        void onError(CalculatorException e);
+    }
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "calculator-evaluation");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Executor callbackExecutor;
+    private final CostEstimator estimator;
+    //Evaluation which is running or waiting, guarded by this
+    private Future<?> running;
+    //Increased by every submit and cancel, only the evaluation of the current generation is delivered, guarded by this
+    private long generation;
+
+    /**
+     * Constructor for setting up the service with CostEstimator.DEFAULT
+     *
+     * @param callbackExecutor executor of the callbacks (eg. view::post for the UI thread)
+     */
+    public EvaluationService(Executor callbackExecutor) {
+        this(callbackExecutor, CostEstimator.DEFAULT);
+    }
+
+    /**
+     * Constructor for setting up the service
+     *
+     * @param callbackExecutor executor of the callbacks of the worker (eg. view::post for the UI thread)
+     * @param estimator        routes the formulas
+     */
+    public EvaluationService(Executor callbackExecutor, CostEstimator estimator) {
+        this.callbackExecutor = callbackExecutor;
+        this.estimator = estimator;
+    }
+
+    /**
+     * Calculates the formula inline or in the background, cancels the evaluation before
+     *
+     * @param ccs      formula, copied before returning
+     * @param policy   precision policy of the evaluation
+     * @param callback receives the result or the exception, not called if the evaluation gets cancelled
+     * @return route of the formula, INLINE and REFUSE have called the callback already
+     */
+    public CostEstimate.Route submit(List<CalculatorCharacter> ccs, PrecisionPolicy policy, Callback callback) {
+        return submit(new ArrayList<>(ccs), null, policy, callback);
+    }
+
+    /**
+     * Calculates the formula of the TokenBuffer inline or in the background, cancels the evaluation before
+     * The buffer is not copied and gets compiled with Calculator.compile(TokenBuffer)
+     *
+     * @param tokens   formula, a snapshot which isn't changed anymore (see TokenBuffer.snapshot())
+     * @param policy   precision policy of the evaluation
+     * @param callback receives the result or the exception, not called if the evaluation gets cancelled
+     * @return route of the formula, INLINE and REFUSE have called the callback already
+     */
+    public CostEstimate.Route submit(TokenBuffer tokens, PrecisionPolicy policy, Callback callback) {
+        return submit(tokens.asList(), tokens, policy, callback);
+    }
+
+    private CostEstimate.Route submit(List<CalculatorCharacter> formula, TokenBuffer tokens, PrecisionPolicy policy, Callback callback) {
+        cancel();
+        CostEstimate.Route route = CostEstimate.Route.INLINE;
+        //Compiled once for the estimator and the evaluation, null if the result is cached
+        ExpressionPlan plan = null;
+        try {
+            //Malformed formulas are refused with the position of the error before anything is compiled
+            FormulaValidator.validate(formula);
+            //Cached results cost nothing
+            if (!Calculator.isCached(formula, policy)) {
+                plan = tokens != null ? Calculator.compile(tokens) : Calculator.compile(formula);
+                route = estimator.check(plan, policy).getRoute();
+            }
+        } catch (LimitExceededException e) {
+            callback.onError(e);
+            return CostEstimate.Route.REFUSE;
+        } catch (BadExpressionException e) {
+            callback.onError(e);
+            return route;
+        }
+        if (route == CostEstimate.Route.INLINE) {
+            try {
+                callback.onResult(plan == null ? Calculator.calculateCCS(formula, policy) : Calculator.calculatePlan(formula, plan, policy));
+            } catch (CalculatorException e) {
+                callback.onError(e);
+            } catch (ArithmeticException e) {
+                callback.onError(new BadExpressionException(e.getMessage(), e));
+            }
+        } else {
+            submitAsync(formula, plan, policy, callback);
+        }
+        return route;
+    }
+
+    /**
+     * Cancels the running evaluation, its callback is not called anymore
+     */
+    public synchronized void cancel() {
+        ++generation;
+        if (running != null) {
+            running.cancel(true);
+            running = null;
+        }
+    }
+
+    /**
+     * Returns true until the outcome of the submitted formula is delivered (or it got cancelled)
+     *
+     * @return true if a callback is still outstanding
+     */
+    public synchronized boolean isBusy() {
+        return running != null;
+    }
+
+    /**
+     * Cancels the running evaluation and stops the worker, the service can't be used afterwards
+     */
+    public synchronized void shutdown() {
+        cancel();
+        worker.shutdownNow();
+    }
+
+    private synchronized void submitAsync(List<CalculatorCharacter> formula, ExpressionPlan plan, PrecisionPolicy policy, Callback callback) {
+        cancel();
+        long id = generation;
+        running = worker.submit(() -> {
+            try {
+                BigDecimal result = Calculator.calculatePlan(formula, plan, policy);
+                deliver(id, () -> callback.onResult(result));
+            } catch (CancelledException e) {
+                //Superseded, nobody waits for it
+            } catch (CalculatorException e) {
+                deliver(id, () -> callback.onError(e));
+            } catch (ArithmeticException e) {
+                //Eg. a scale overflow of BigDecimal, would stay unnoticed in the worker
+                deliver(id, () -> callback.onError(new BadExpressionException(e.getMessage(), e)));
+            }
+        });
+    }
+
+    private void deliver(long id, Runnable delivery) {
+        callbackExecutor.execute(() -> {
+            synchronized (this) {
+                if (id != generation) {
+                    return;
+                }
+                running = null;
+            }
+            delivery.run();
+        });
+    }
+}
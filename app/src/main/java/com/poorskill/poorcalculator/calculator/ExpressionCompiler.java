@@ -0,0 +1,308 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorOperation;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorSeparator;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorValues;
+import com.poorskill.poorcalculator.calculator.characters.supported.CalculatorSeparatorEnum;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
+import com.poorskill.poorcalculator.calculator.exceptions.BadExpressionException;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles a formula (List of CalculatorCharacters) into postfix order with one linear pass (shunting-yard)
+ * <p>
+ * Brackets and the priority of multiply/divide over add/sub are resolved while reading the formula once,
+ * so the calculator doesn't need to search, splice and recurse into the list anymore
+ */
+final class ExpressionCompiler {
+    //Leading minus which negates the following term, kept apart from the binary sub by its identity
+    static final CalculatorOperation UNARY_MINUS = new CalculatorOperation(SupportedOperations.Sub);
+    //Operation inserted between two values without operation (eg. "(2)(3)")
+    private static final CalculatorOperation IMPLICIT_MULTIPLY = new CalculatorOperation(SupportedOperations.Multiply);
+    //Marker for an open bracket on the operator stack
+    private static final CalculatorOperation BRACKET_MARKER = null;
+
+    private final CalculatorCharacter[] output;
+    private final CalculatorOperation[] operators;
+    //output position at every open bracket, used to detect empty brackets
+    private final int[] bracketStart;
+    private int outputCount, operatorCount, depth;
+    //Flags of the last read character
+    private boolean expectValue = true, groupBegin = true, lastIsUnary;
+    //Amount of values on the operand stack while evaluating the output and its highest value
+    private int stackCount, maxStackCount;
+
+    /**
+     * Constructor for setting up the buffers for a formula of the given size
+     *
+     * @param size amount of CalculatorCharacters in the formula
+     */
+    private ExpressionCompiler(int size) {
+        //every character adds at most two entries (value + implicit multiply, zero + unary minus)
+        this.output = new CalculatorCharacter[2 * size];
+        this.operators = new CalculatorOperation[2 * size + 1];
+        this.bracketStart = new int[size + 1];
+    }
+
+    /**
+     * Compiles the formula into postfix order
+     * Values (numbers, constants) and operations are kept as they are, brackets are resolved and implicit multiplications (eg. "(2)(3)") are made explicit
+     * A leading minus is added as UNARY_MINUS after the term it negates
+     * <p>
+     * A leading minus in front of a formula or bracket negates the following term,
+     * a trailing add/sub is ignored, a trailing multiply/divide is a bad expression
+     * and missing right brackets at the end of the formula are closed automatically
+     *
+     * @param ccs Formula as List of CalculatorCharacters (not modified)
+     * @return formula in postfix order as ExpressionPlan, empty if the formula has no values
+     * @throws BadExpressionException if there are operation characters miss-placed or not logical
+     */
+    static ExpressionPlan compile(List<CalculatorCharacter> ccs) throws BadExpressionException {
+        TokenBuffer tokens = TokenBuffer.of(ccs);
+        if (tokens != null) {
+            return compile(tokens);
+        }
+        ExpressionCompiler compiler = new ExpressionCompiler(ccs.size());
+        for (int i = 0; i < ccs.size(); ++i) {
+            compiler.read(ccs.get(i));
+        }
+        return compiler.finish();
+    }
+
+    /**
+     * Compiles the formula of the TokenBuffer into postfix order, same as compile(List) but switches over the codes of the buffer
+     *
+     * @param tokens Formula as TokenBuffer (not modified)
+     * @return formula in postfix order as ExpressionPlan, empty if the formula has no values
+     * @throws BadExpressionException if there are operation characters miss-placed or not logical
+     */
+    static ExpressionPlan compile(TokenBuffer tokens) throws BadExpressionException {
+        ExpressionCompiler compiler = new ExpressionCompiler(tokens.size());
+        for (int i = 0; i < tokens.size(); ++i) {
+            switch (tokens.getCode(i)) {
+                case TokenBuffer.NUMBER:
+                case TokenBuffer.PI:
+                case TokenBuffer.E:
+                    compiler.readValue(tokens.get(i));
+                    break;
+                case TokenBuffer.LEFT_BRACKET:
+                    compiler.readLeftBracket();
+                    break;
+                case TokenBuffer.RIGHT_BRACKET:
+                    compiler.readRightBracket();
+                    break;
+                case TokenBuffer.DECIMAL_SEPARATOR:
+                    break;
+                default:
+                    compiler.readOperation((CalculatorOperation) tokens.get(i));
+            }
+        }
+        return compiler.finish();
+    }
+
+    /**
+     * Reads the next CalculatorCharacter of the formula
+     *
+     * @param cc next CalculatorCharacter
+     * @throws BadExpressionException if the character is not allowed at this position
+     */
+    private void read(CalculatorCharacter cc) throws BadExpressionException {
+        if (cc instanceof CalculatorValues) {
+            readValue(cc);
+        } else if (cc instanceof CalculatorSeparator) {
+            //Decimal separators are only placeholders while typing
+            CalculatorSeparatorEnum separator = ((CalculatorSeparator) cc).getSeparator();
+            if (separator == CalculatorSeparatorEnum.LeftBracket) {
+                readLeftBracket();
+            } else if (separator == CalculatorSeparatorEnum.RightBracket) {
+                readRightBracket();
+            }
+        } else if (cc instanceof CalculatorOperation) {
+            readOperation((CalculatorOperation) cc);
+        }
+    }
+
+    /**
+     * Reads a number or constant, a value directly after another value or right bracket is multiplied
+     */
+    private void readValue(CalculatorCharacter cc) {
+        if (!expectValue) {
+            pushOperation(IMPLICIT_MULTIPLY);
+        }
+        appendValue(cc);
+        expectValue = groupBegin = lastIsUnary = false;
+    }
+
+    /**
+     * Opens a bracket on the operator stack
+     */
+    private void readLeftBracket() {
+        if (!expectValue) {
+            pushOperation(IMPLICIT_MULTIPLY);
+        }
+        operators[operatorCount++] = BRACKET_MARKER;
+        bracketStart[depth++] = outputCount;
+        expectValue = groupBegin = true;
+        lastIsUnary = false;
+    }
+
+    /**
+     * Closes the innermost open bracket
+     */
+    private void readRightBracket() throws BadExpressionException {
+        //Right brackets without left bracket are ignored
+        if (depth > 0) {
+            closeBracket();
+        }
+    }
+
+    /**
+     * Reads faculty (postfix), a leading minus (unary) or a binary operation
+     */
+    private void readOperation(CalculatorOperation operation) throws BadExpressionException {
+        if (operation.getOperation() == SupportedOperations.Faculty) {
+            if (expectValue) {
+                throw new BadExpressionException();
+            }
+            //Faculty is postfix already and binds tighter than every other operation
+            appendOperation(operation);
+        } else if (operation.getOperation() == SupportedOperations.Sub && groupBegin) {
+            operators[operatorCount++] = UNARY_MINUS;
+            groupBegin = false;
+            lastIsUnary = true;
+        } else {
+            if (expectValue) {
+                throw new BadExpressionException();
+            }
+            pushOperation(operation);
+            expectValue = true;
+            lastIsUnary = false;
+        }
+    }
+
+    /**
+     * Ends the formula, closes open brackets and returns the postfix order
+     *
+     * @return formula in postfix order as ExpressionPlan
+     * @throws BadExpressionException if the formula ends not logical
+     */
+    private ExpressionPlan finish() throws BadExpressionException {
+        while (depth > 0) {
+            closeBracket();
+        }
+        if (expectValue) {
+            dropTrailingOperation();
+        }
+        while (operatorCount > 0) {
+            appendOperation(operators[--operatorCount]);
+        }
+        return new ExpressionPlan(Arrays.copyOf(output, outputCount), maxStackCount);
+    }
+
+    /**
+     * Moves all operations of the current bracket into the output and removes the bracket
+     *
+     * @throws BadExpressionException if the bracket is empty or ends with multiply/divide
+     */
+    private void closeBracket() throws BadExpressionException {
+        if (expectValue) {
+            dropTrailingOperation();
+        }
+        while (operators[operatorCount - 1] != BRACKET_MARKER) {
+            appendOperation(operators[--operatorCount]);
+        }
+        operatorCount--;
+        if (bracketStart[--depth] == outputCount) {
+            throw new BadExpressionException();
+        }
+        expectValue = groupBegin = lastIsUnary = false;
+    }
+
+    /**
+     * Removes a trailing add/sub (or a leading minus) which got no value after it
+     *
+     * @throws BadExpressionException if the trailing operation is multiply/divide
+     */
+    private void dropTrailingOperation() throws BadExpressionException {
+        if (groupBegin) {
+            return;
+        }
+        SupportedOperations operation = operators[--operatorCount].getOperation();
+        if (operation == SupportedOperations.Multiply || operation == SupportedOperations.Divide) {
+            throw new BadExpressionException();
+        }
+        expectValue = lastIsUnary;
+        groupBegin = lastIsUnary;
+        lastIsUnary = false;
+    }
+
+    /**
+     * Moves all operations with higher or same priority into the output and pushes the operation on the operator stack
+     *
+     * @param operation add, sub, multiply or divide
+     */
+    private void pushOperation(CalculatorOperation operation) {
+        int priority = getPriority(operation.getOperation());
+        while (operatorCount > 0 && operators[operatorCount - 1] != BRACKET_MARKER && getPriority(operators[operatorCount - 1].getOperation()) >= priority) {
+            appendOperation(operators[--operatorCount]);
+        }
+        operators[operatorCount++] = operation;
+    }
+
+    /**
+     * Appends a value to the output
+     *
+     * @param cc number or constant
+     */
+    private void appendValue(CalculatorCharacter cc) {
+        output[outputCount++] = cc;
+        maxStackCount = Math.max(maxStackCount, ++stackCount);
+    }
+
+    /**
+     * Appends an operation to the output, binary operations take two values from the operand stack and add their result
+     *
+     * @param operation operation or UNARY_MINUS
+     */
+    private void appendOperation(CalculatorOperation operation) {
+        output[outputCount++] = operation;
+        if (operation != UNARY_MINUS && operation.getOperation() != SupportedOperations.Faculty) {
+            stackCount--;
+        }
+    }
+
+    /**
+     * Returns the priority of the binary operations (multiply/divide before add/sub)
+     *
+     * @param operation binary operation
+     * @return priority, higher is calculated first
+     */
+    private static int getPriority(SupportedOperations operation) {
+        return operation == SupportedOperations.Multiply || operation == SupportedOperations.Divide ? 2 : 1;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorConstant;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorOperation;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorValues;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedConstant;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
+import com.poorskill.poorcalculator.calculator.exceptions.BadExpressionException;
+import com.poorskill.poorcalculator.calculator.exceptions.CancelledException;
+import com.poorskill.poorcalculator.calculator.exceptions.DividedByZeroException;
+import com.poorskill.poorcalculator.calculator.exceptions.LimitExceededException;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable compiled formula (see Calculator.compile())
+ * <p>
+ * Holds the formula in postfix order, so it can be evaluated any number of times without parsing or copying the CalculatorCharacters again.
+ * Values which fit into a long mantissa are converted once while compiling and calculated in the long tier of the OperandStack
+ */
+public final class ExpressionPlan {
+    //Instructions of the postfix order, read by the CostEstimator too
+    static final byte LONG_VALUE = 0, BIG_VALUE = 1, MISSING_VALUE = 2, ADD = 3, SUB = 4, MULTIPLY = 5, DIVIDE = 6, FACULTY = 7, NEGATE = 8, CONSTANT = 9;
+    private static final SupportedConstant[] CONSTANTS = SupportedConstant.values();
+    private final byte[] code;
+    //Values of the instructions, mantissa and scale for LONG_VALUE, BigDecimal for BIG_VALUE, constant ordinal as mantissa for CONSTANT
+    private final long[] mantissas;
+    private final int[] scales;
+    private final BigDecimal[] values;
+    //Highest amount of values on the operand stack while evaluating
+    private final int stackSize;
+
+    /**
+     * Constructor for setting up the plan, only used by the ExpressionCompiler
+     *
+     * @param postfix   values and operations in postfix order
+     * @param stackSize highest amount of values on the operand stack
+     */
+    ExpressionPlan(CalculatorCharacter[] postfix, int stackSize) {
+        this.code = new byte[postfix.length];
+        this.mantissas = new long[postfix.length];
+        this.scales = new int[postfix.length];
+        this.values = new BigDecimal[postfix.length];
+        this.stackSize = stackSize;
+        for (int i = 0; i < postfix.length; ++i) {
+            CalculatorCharacter cc = postfix[i];
+            if (cc instanceof CalculatorConstant) {
+                //Constants are resolved with the precision of the evaluation
+                code[i] = CONSTANT;
+                mantissas[i] = ((CalculatorConstant) cc).getConstant().ordinal();
+            } else if (cc instanceof CalculatorValues) {
+                BigDecimal value = ((CalculatorValues) cc).getValue();
+                if (value == null) {
+                    code[i] = MISSING_VALUE;
+                } else if (value.precision() <= OperandStack.MAX_LONG_PRECISION) {
+                    code[i] = LONG_VALUE;
+                    mantissas[i] = value.unscaledValue().longValue();
+                    scales[i] = value.scale();
+                } else {
+                    code[i] = BIG_VALUE;
+                    values[i] = value;
+                }
+            } else if (cc == ExpressionCompiler.UNARY_MINUS) {
+                code[i] = NEGATE;
+            } else {
+                code[i] = getInstruction(((CalculatorOperation) cc).getOperation());
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of instructions
+     *
+     * @return length of the postfix order
+     */
+    int getLength() {
+        return code.length;
+    }
+
+    /**
+     * Returns the instruction at position i of the postfix order
+     *
+     * @param i position of the instruction
+     * @return instruction
+     */
+    byte getInstruction(int i) {
+        return code[i];
+    }
+
+    /**
+     * Returns the value of a LONG_VALUE or BIG_VALUE instruction
+     *
+     * @param i position of the instruction
+     * @return value of the instruction
+     */
+    BigDecimal getValue(int i) {
+        return code[i] == BIG_VALUE ? values[i] : BigDecimal.valueOf(mantissas[i], scales[i]);
+    }
+
+    /**
+     * Returns true if the formula contains no values
+     *
+     * @return true if evaluate() returns null
+     */
+    public boolean isEmpty() {
+        return code.length == 0;
+    }
+
+    /**
+     * Evaluates the formula with PrecisionPolicy.STANDARD and returns the result as BigDecimal
+     *
+     * @return evaluation of the formula, null if the formula contains no values
+     * @throws DividedByZeroException if the formula divides by zero
+     * @throws BadExpressionException if a value is missing
+     * @throws LimitExceededException if a faculty is above the limit
+     * @throws CancelledException     if the thread got interrupted
+     */
+    public BigDecimal evaluate() throws DividedByZeroException, BadExpressionException, LimitExceededException, CancelledException {
+        return evaluate(PrecisionPolicy.STANDARD);
+    }
+
+    /**
+     * Evaluates the formula with an operand stack and returns the result as BigDecimal
+     * Safe to call multiple times and from multiple threads since the plan itself is never modified
+     * Checks before every reduction (and constant) if the thread got interrupted, so a background evaluation can be cancelled
+     *
+     * @param policy precision policy of this evaluation
+     * @return evaluation of the formula, null if the formula contains no values
+     * @throws DividedByZeroException if the formula divides by zero
+     * @throws BadExpressionException if a value is missing
+     * @throws LimitExceededException if a faculty is above the limit
+     * @throws CancelledException     if the thread got interrupted
+     */
+    public BigDecimal evaluate(PrecisionPolicy policy) throws DividedByZeroException, BadExpressionException, LimitExceededException, CancelledException {
+        if (code.length == 0) {
+            return null;
+        }
+        OperandStack stack = new OperandStack(stackSize, policy);
+        for (int i = 0; i < code.length; ++i) {
+            if (code[i] > MISSING_VALUE && Thread.interrupted()) {
+                throw new CancelledException();
+            }
+            switch (code[i]) {
+                case LONG_VALUE:
+                    stack.push(mantissas[i], scales[i]);
+                    break;
+                case BIG_VALUE:
+                    stack.push(values[i]);
+                    break;
+                case CONSTANT:
+                    stack.push(ConstantProvider.getValue(CONSTANTS[(int) mantissas[i]], policy.getWorkingContext()));
+                    break;
+                case MISSING_VALUE:
+                    throw new BadExpressionException();
+                case ADD:
+                    stack.calculate(SupportedOperations.Add);
+                    break;
+                case SUB:
+                    stack.calculate(SupportedOperations.Sub);
+                    break;
+                case MULTIPLY:
+                    stack.calculate(SupportedOperations.Multiply);
+                    break;
+                case DIVIDE:
+                    stack.calculate(SupportedOperations.Divide);
+                    break;
+                case FACULTY:
+                    stack.faculty();
+                    break;
+                case NEGATE:
+                    stack.negate();
+                    break;
+            }
+        }
+        return policy.roundResult(stack.pop());
+    }
+
+    /**
+     * Returns the instruction of the operation
+     *
+     * @param operation supported operation
+     * @return instruction
+     */
+    private static byte getInstruction(SupportedOperations operation) {
+        switch (operation) {
+            case Add:
+                return ADD;
+            case Sub:
+                return SUB;
+            case Multiply:
+                return MULTIPLY;
+            case Divide:
+                return DIVIDE;
+            default:
+                return FACULTY;
+        }
+    }
+}
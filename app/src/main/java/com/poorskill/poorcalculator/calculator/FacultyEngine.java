@@ -0,0 +1,254 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.exceptions.CancelledException;
+import com.poorskill.poorcalculator.calculator.exceptions.LimitExceededException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Calculates faculties (n!) without multiplying one value at a time
+ * <p>
+ * n ≤ 20 is read from a table of longs, n ≤ CACHE_LIMIT from a cache which is built on first use.
+ * Up to PRIME_SWING_THRESHOLD the factors get multiplied as a balanced product tree (binary splitting), so most multiplications have small operands.
+ * Above it the prime-swing algorithm is used: n! = ((n/2)!)² * swing(n), swing(n) is built from the prime factorization and needs far fewer multiplications.
+ * Inputs above the limit throw a LimitExceededException instead of blocking the calculation for minutes.
+ * Every step of the product trees and of the prime sieve checks the interrupt flag, so a cancelled evaluation stops with a CancelledException.
+ */
+public final class FacultyEngine {
+    public static final int DEFAULT_LIMIT = 10000;
+    public static final FacultyEngine DEFAULT = new FacultyEngine(DEFAULT_LIMIT);
+    static final int CACHE_LIMIT = 100;
+    static final int PRIME_SWING_THRESHOLD = 1000;
+    //Factors which are multiplied as long before the product tree goes on with BigInteger
+    private static final int LEAF_SIZE = 16;
+
+    private static final long[] TABLE = {
+            1L, 1L, 2L, 6L, 24L, 120L, 720L, 5040L, 40320L, 362880L, 3628800L, 39916800L, 479001600L,
+            6227020800L, 87178291200L, 1307674368000L, 20922789888000L, 355687428096000L,
+            6402373705728000L, 121645100408832000L, 2432902008176640000L
+    };
+    private static final BigInteger[] CACHE = new BigInteger[CACHE_LIMIT + 1];
+    private static int cachedUpTo = -1;
+
+    private static volatile FacultyEngine current = DEFAULT;
+
+    private final int limit;
+
+    /**
+     * Constructor for setting up an engine with an upper bound
+     *
+     * @param limit highest n which gets calculated
+     */
+    public FacultyEngine(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative");
+        }
+        this.limit = limit;
+    }
+
+    /**
+     * Returns the engine which is used by the calculator
+     *
+     * @return current engine, DEFAULT if not changed
+     */
+    public static FacultyEngine getCurrent() {
+        return current;
+    }
+
+    /**
+     * Sets the engine which is used by the calculator (eg. with a higher limit)
+     *
+     * @param engine new engine
+     */
+    public static void setCurrent(FacultyEngine engine) {
+        if (engine == null) {
+            throw new IllegalArgumentException("engine must not be null");
+        }
+        current = engine;
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * Calculates the faculty of the input BigDecimal
+     * Integer values are calculated exactly, values with decimal places are multiplied down to a value ≤ 1 (eg. 3.5! = 3.5 * 2.5 * 1.5)
+     * and negative values stay unchanged like in the old while loop
+     *
+     * @param input faculty of as BigDecimal
+     * @return the faculty value
+     * @throws LimitExceededException if the input is above the limit
+     * @throws CancelledException     if the thread got interrupted
+     */
+    public BigDecimal getFaculty(BigDecimal input) throws LimitExceededException, CancelledException {
+        if (input.signum() <= 0) {
+            return input.signum() == 0 ? BigDecimal.ONE : input;
+        }
+        if (input.compareTo(BigDecimal.valueOf(limit)) > 0) {
+            throw new LimitExceededException("Faculty input is above the limit of " + limit);
+        }
+        if (Calculator.isIntegerValue(input)) {
+            return new BigDecimal(getFaculty(input.intValueExact()));
+        }
+        BigDecimal result = input, restValue = input;
+        while (restValue.longValue() > 1) {
+            //The digits grow with every step, so long loops are cancellable
+            checkInterrupted();
+            result = result.multiply(restValue = restValue.subtract(BigDecimal.ONE));
+        }
+        return result;
+    }
+
+    /**
+     * Calculates n!
+     *
+     * @param n not negative
+     * @return the faculty value
+     * @throws LimitExceededException if n is above the limit
+     * @throws CancelledException     if the thread got interrupted
+     */
+    public BigInteger getFaculty(int n) throws LimitExceededException, CancelledException {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative");
+        }
+        if (n > limit) {
+            throw new LimitExceededException("Faculty input is above the limit of " + limit);
+        }
+        return faculty(n);
+    }
+
+    private static BigInteger faculty(int n) throws CancelledException {
+        if (n < TABLE.length) {
+            return BigInteger.valueOf(TABLE[n]);
+        }
+        if (n <= CACHE_LIMIT) {
+            return getCached(n);
+        }
+        if (n < PRIME_SWING_THRESHOLD) {
+            return getCached(CACHE_LIMIT).multiply(product(CACHE_LIMIT + 1, n));
+        }
+        BigInteger half = faculty(n / 2);
+        return half.multiply(half).multiply(swing(n));
+    }
+
+    /**
+     * Returns n! out of the cache, builds the cache up to n on first use
+     */
+    private static synchronized BigInteger getCached(int n) {
+        if (cachedUpTo < 0) {
+            for (int i = 0; i < TABLE.length; ++i) {
+                CACHE[i] = BigInteger.valueOf(TABLE[i]);
+            }
+            cachedUpTo = TABLE.length - 1;
+        }
+        for (; cachedUpTo < n; ++cachedUpTo) {
+            CACHE[cachedUpTo + 1] = CACHE[cachedUpTo].multiply(BigInteger.valueOf(cachedUpTo + 1));
+        }
+        return CACHE[n];
+    }
+
+    /**
+     * Multiplies all integers from..to (both included) as balanced product tree
+     */
+    private static BigInteger product(int from, int to) throws CancelledException {
+        if (to - from < LEAF_SIZE) {
+            return multiplyLeaf(from, to);
+        }
+        checkInterrupted();
+        int middle = (from + to) >>> 1;
+        return product(from, middle).multiply(product(middle + 1, to));
+    }
+
+    private static BigInteger multiplyLeaf(int from, int to) {
+        BigInteger result = BigInteger.ONE;
+        long factor = 1;
+        for (int i = from; i <= to; ++i) {
+            if (factor > Long.MAX_VALUE / i) {
+                result = result.multiply(BigInteger.valueOf(factor));
+                factor = 1;
+            }
+            factor *= i;
+        }
+        return factor == 1 ? result : result.multiply(BigInteger.valueOf(factor));
+    }
+
+    /**
+     * Calculates the swing factorial n!/((n/2)!)² out of its prime factorization
+     * Every prime p ≤ n is included with the exponent of how many of n/p, n/p², ... are odd, p^exponent is never above n
+     */
+    private static BigInteger swing(int n) throws CancelledException {
+        boolean[] composite = new boolean[n + 1];
+        long[] factors = new long[n];
+        int count = 0;
+        for (int p = 2; p <= n; ++p) {
+            if (composite[p]) {
+                continue;
+            }
+            checkInterrupted();
+            for (long multiple = (long) p * p; multiple <= n; multiple += p) {
+                composite[(int) multiple] = true;
+            }
+            long factor = 1;
+            for (int q = n / p; q > 0; q /= p) {
+                if ((q & 1) == 1) {
+                    factor *= p;
+                }
+            }
+            if (factor > 1) {
+                factors[count++] = factor;
+            }
+        }
+        return product(factors, 0, count - 1);
+    }
+
+    /**
+     * Multiplies factors[from..to] (both included) as balanced product tree
+     */
+    private static BigInteger product(long[] factors, int from, int to) throws CancelledException {
+        if (to - from < LEAF_SIZE) {
+            BigInteger result = BigInteger.ONE;
+            long factor = 1;
+            for (int i = from; i <= to; ++i) {
+                if (factor > Long.MAX_VALUE / factors[i]) {
+                    result = result.multiply(BigInteger.valueOf(factor));
+                    factor = 1;
+                }
+                factor *= factors[i];
+            }
+            return factor == 1 ? result : result.multiply(BigInteger.valueOf(factor));
+        }
+        checkInterrupted();
+        int middle = (from + to) >>> 1;
+        return product(factors, from, middle).multiply(product(factors, middle + 1, to));
+    }
+
+    private static void checkInterrupted() throws CancelledException {
+        if (Thread.interrupted()) {
+            throw new CancelledException();
+        }
+    }
+}
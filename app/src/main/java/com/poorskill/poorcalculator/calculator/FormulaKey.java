@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorSeparator;
+import com.poorskill.poorcalculator.calculator.characters.supported.CalculatorSeparatorEnum;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable canonical key of a formula and the precision policy it gets evaluated with
+ * <p>
+ * Decimal separators are left out since they don't change the result, so formulas which are calculated the same have the same key.
+ * The hash is calculated once in the constructor out of the hashes of the CalculatorCharacters.
+ */
+final class FormulaKey {
+    private final CalculatorCharacter[] characters;
+    private final PrecisionPolicy policy;
+    private final int hash;
+
+    /**
+     * Constructor for setting up the key, copies the characters
+     *
+     * @param ccs    Formula as List of CalculatorCharacters (not modified)
+     * @param policy precision policy of the evaluation
+     */
+    FormulaKey(List<CalculatorCharacter> ccs, PrecisionPolicy policy) {
+        CalculatorCharacter[] characters = new CalculatorCharacter[ccs.size()];
+        int size = 0;
+        for (CalculatorCharacter cc : ccs) {
+            if (!(cc instanceof CalculatorSeparator && ((CalculatorSeparator) cc).getSeparator() == CalculatorSeparatorEnum.DecimalSeparator)) {
+                characters[size++] = cc;
+            }
+        }
+        this.characters = size == characters.length ? characters : Arrays.copyOf(characters, size);
+        this.policy = policy;
+        this.hash = 31 * Arrays.hashCode(this.characters) + policy.hashCode();
+    }
+
+    /**
+     * Returns the amount of characters of the formula
+     *
+     * @return size of the canonical formula
+     */
+    int size() {
+        return characters.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FormulaKey)) {
+            return false;
+        }
+        FormulaKey other = (FormulaKey) o;
+        return hash == other.hash && policy.equals(other.policy) && Arrays.equals(characters, other.characters);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
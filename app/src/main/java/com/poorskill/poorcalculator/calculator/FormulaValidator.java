@@ -0,0 +1,281 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorNumber;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorOperation;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorSeparator;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorValues;
+import com.poorskill.poorcalculator.calculator.characters.supported.CalculatorSeparatorEnum;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
+import com.poorskill.poorcalculator.calculator.exceptions.BadExpressionException;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks a formula while it is typed, without calculating anything
+ * <p>
+ * Keeps a small state after every CalculatorCharacter (open brackets, whether a value is expected, the last operation and the first error),
+ * so appending a character, removing the last one and asking if the formula is valid cost O(1).
+ * Accepts the same formulas as the ExpressionCompiler, but knows the index of the offending character:
+ * <ul>
+ * <li>an operation or faculty where a value is expected (eg. "5 × ÷", "(!")</li>
+ * <li>a multiply/divide without value before a right bracket or the end</li>
+ * <li>an empty bracket (eg. "()", "(−)")</li>
+ * <li>a number without value</li>
+ * </ul>
+ * Brackets are balanced like the compiler does it: missing right brackets are closed at the end and right brackets without left bracket are ignored.
+ */
+public final class FormulaValidator {
+    //states[i] is the state after the first i characters, states[0] the empty formula
+    private State[] states = new State[16];
+    private int size;
+
+    /**
+     * Constructor for setting up a validator with an empty formula
+     */
+    public FormulaValidator() {
+        states[0] = State.EMPTY;
+    }
+
+    /**
+     * Checks a whole formula with one pass
+     *
+     * @param ccs formula
+     * @throws BadExpressionException with the position of the offending character if the formula is not logical
+     */
+    public static void validate(List<CalculatorCharacter> ccs) throws BadExpressionException {
+        State state = State.EMPTY;
+        for (int i = 0; i < ccs.size() && state.errorPosition < 0; ++i) {
+            state = state.next(ccs.get(i), i);
+        }
+        state.check();
+    }
+
+    /**
+     * Appends the next CalculatorCharacter of the formula
+     *
+     * @param cc appended CalculatorCharacter
+     */
+    public void append(CalculatorCharacter cc) {
+        if (size + 1 == states.length) {
+            states = Arrays.copyOf(states, states.length * 2);
+        }
+        states[size + 1] = states[size].next(cc, size);
+        size++;
+    }
+
+    /**
+     * Removes the last CalculatorCharacter, the state before it is still known
+     */
+    public void removeLast() {
+        if (size > 0) {
+            states[size--] = null;
+        }
+    }
+
+    /**
+     * Removes all CalculatorCharacters
+     */
+    public void clear() {
+        Arrays.fill(states, 1, size + 1, null);
+        size = 0;
+    }
+
+    /**
+     * Returns the amount of appended CalculatorCharacters
+     *
+     * @return size of the formula
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the formula can be compiled as if it would end after the last appended character
+     *
+     * @return true if the formula is valid
+     */
+    public boolean isValid() {
+        return states[size].getEndErrorPosition() < 0;
+    }
+
+    /**
+     * Returns the index of the offending character as if the formula would end after the last appended character
+     *
+     * @return position of the first error, -1 if the formula is valid
+     */
+    public int getErrorPosition() {
+        return states[size].getEndErrorPosition();
+    }
+
+    /**
+     * Throws if the formula is not valid as if it would end after the last appended character
+     *
+     * @throws BadExpressionException with the position of the offending character
+     */
+    public void check() throws BadExpressionException {
+        states[size].check();
+    }
+
+    /**
+     * Immutable open bracket: index of the left bracket and whether it contains a value
+     */
+    private static final class Bracket {
+        private final Bracket parent;
+        private final int position;
+        private final boolean hasValue;
+
+        private Bracket(Bracket parent, int position, boolean hasValue) {
+            this.parent = parent;
+            this.position = position;
+            this.hasValue = hasValue;
+        }
+
+        private Bracket withValue() {
+            return hasValue ? this : new Bracket(parent, position, true);
+        }
+    }
+
+    /**
+     * Immutable state after a character, the flags follow the ones of the ExpressionCompiler
+     */
+    private static final class State {
+        private static final State EMPTY = new State(new Bracket(null, -1, false), 0, true, true, false, -1, false, -1, null);
+        //Innermost open bracket, the formula itself at depth 0
+        private final Bracket bracket;
+        private final int depth;
+        private final boolean expectValue, groupBegin, lastIsUnary;
+        //Last add/sub/multiply/divide, dropped or refused if the formula ends after it
+        private final int lastOperation;
+        private final boolean lastIsMultiplyOrDivide;
+        //First error, every following state keeps it
+        private final int errorPosition;
+        private final String errorMessage;
+
+        private State(Bracket bracket, int depth, boolean expectValue, boolean groupBegin, boolean lastIsUnary, int lastOperation, boolean lastIsMultiplyOrDivide,
+                      int errorPosition, String errorMessage) {
+            this.bracket = bracket;
+            this.depth = depth;
+            this.expectValue = expectValue;
+            this.groupBegin = groupBegin;
+            this.lastIsUnary = lastIsUnary;
+            this.lastOperation = lastOperation;
+            this.lastIsMultiplyOrDivide = lastIsMultiplyOrDivide;
+            this.errorPosition = errorPosition;
+            this.errorMessage = errorMessage;
+        }
+
+        /**
+         * Returns the state after the next character
+         *
+         * @param cc       next CalculatorCharacter
+         * @param position index of the character
+         * @return new state (or this if the character changes nothing)
+         */
+        private State next(CalculatorCharacter cc, int position) {
+            if (errorPosition >= 0) {
+                return this;
+            }
+            if (cc instanceof CalculatorValues) {
+                if (cc instanceof CalculatorNumber && ((CalculatorNumber) cc).getValue() == null) {
+                    return error(position, "Number without value");
+                }
+                return new State(bracket.withValue(), depth, false, false, false, lastOperation, lastIsMultiplyOrDivide, -1, null);
+            } else if (cc instanceof CalculatorSeparator) {
+                CalculatorSeparatorEnum separator = ((CalculatorSeparator) cc).getSeparator();
+                if (separator == CalculatorSeparatorEnum.LeftBracket) {
+                    return new State(new Bracket(bracket, position, false), depth + 1, true, true, false, lastOperation, lastIsMultiplyOrDivide, -1, null);
+                }
+                if (separator == CalculatorSeparatorEnum.RightBracket && depth > 0) {
+                    int closeError = getCloseErrorPosition(position);
+                    if (closeError >= 0) {
+                        return error(closeError, closeError == position ? "Empty bracket" : "Missing value after operation");
+                    }
+                    return new State(bracket.parent.withValue(), depth - 1, false, false, false, lastOperation, lastIsMultiplyOrDivide, -1, null);
+                }
+                //Decimal separators and right brackets without left bracket are ignored
+                return this;
+            } else if (cc instanceof CalculatorOperation) {
+                SupportedOperations operation = ((CalculatorOperation) cc).getOperation();
+                if (operation == SupportedOperations.Faculty) {
+                    return expectValue ? error(position, "Faculty without value") : this;
+                }
+                if (operation == SupportedOperations.Sub && groupBegin) {
+                    return new State(bracket, depth, expectValue, false, true, position, false, -1, null);
+                }
+                if (expectValue) {
+                    return error(position, "Operation without value");
+                }
+                boolean multiplyOrDivide = operation == SupportedOperations.Multiply || operation == SupportedOperations.Divide;
+                return new State(bracket, depth, true, false, false, position, multiplyOrDivide, -1, null);
+            }
+            return this;
+        }
+
+        /**
+         * Returns the position of the error of closing the innermost bracket
+         *
+         * @param emptyPosition position reported for an empty bracket
+         * @return position of the offending character, -1 if the bracket can be closed
+         */
+        private int getCloseErrorPosition(int emptyPosition) {
+            if (expectValue && !groupBegin && lastIsMultiplyOrDivide && !lastIsUnary) {
+                return lastOperation;
+            }
+            //A trailing add/sub (or leading minus) is dropped, the bracket must contain a value anyway
+            return bracket.hasValue ? -1 : emptyPosition;
+        }
+
+        /**
+         * Returns the position of the first error as if the formula would end here
+         * Only the innermost bracket can fail, every bracket around it contains the innermost one as value
+         *
+         * @return position of the offending character, -1 if the formula is valid
+         */
+        private int getEndErrorPosition() {
+            if (errorPosition >= 0) {
+                return errorPosition;
+            }
+            if (depth > 0) {
+                return getCloseErrorPosition(bracket.position);
+            }
+            return expectValue && !groupBegin && lastIsMultiplyOrDivide && !lastIsUnary ? lastOperation : -1;
+        }
+
+        private void check() throws BadExpressionException {
+            int position = getEndErrorPosition();
+            if (position >= 0) {
+                String message = errorPosition >= 0 ? errorMessage
+                        : depth > 0 && position == bracket.position ? "Empty bracket" : "Missing value after operation";
+                throw new BadExpressionException(message + " at " + position, position);
+            }
+        }
+
+        private State error(int position, String message) {
+            return new State(bracket, depth, expectValue, groupBegin, lastIsUnary, lastOperation, lastIsMultiplyOrDivide, position, message);
+        }
+    }
+}
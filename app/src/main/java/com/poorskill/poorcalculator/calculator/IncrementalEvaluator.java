@@ -0,0 +1,391 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorConstant;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorOperation;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorSeparator;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorValues;
+import com.poorskill.poorcalculator.calculator.characters.supported.CalculatorSeparatorEnum;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
+import com.poorskill.poorcalculator.calculator.exceptions.BadExpressionException;
+import com.poorskill.poorcalculator.calculator.exceptions.CalculatorException;
+import com.poorskill.poorcalculator.calculator.exceptions.LimitExceededException;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Evaluates a formula while it is typed, for the live result preview
+ * <p>
+ * Keeps the partial reductions of the formula (closed brackets, finished multiply/divide runs, the add/sub sum) after every CalculatorCharacter.
+ * Appending a character or removing the last one only changes the end of the formula, so it only costs the reduction of that character
+ * instead of calculating the whole formula again.
+ * getResult() returns the same result (and throws the same exceptions) as Calculator.calculateCCS() of the characters appended so far.
+ * With a CostEstimator, faculties which are too expensive for its inline path are not calculated and fail with a LimitExceededException,
+ * so typing a huge faculty doesn't block the thread which shows the preview.
+ */
+public final class IncrementalEvaluator {
+    //states[i] is the state after the first i characters, states[0] the empty formula
+    private State[] states = new State[16];
+    private int size;
+    private final PrecisionPolicy policy;
+    //Null to calculate every faculty
+    private final CostEstimator estimator;
+
+    /**
+     * Constructor for setting up an evaluator with an empty formula and PrecisionPolicy.STANDARD
+     */
+    public IncrementalEvaluator() {
+        this(PrecisionPolicy.STANDARD);
+    }
+
+    /**
+     * Constructor for setting up an evaluator with an empty formula
+     *
+     * @param policy precision policy of every reduction and the result
+     */
+    public IncrementalEvaluator(PrecisionPolicy policy) {
+        this(policy, null);
+    }
+
+    /**
+     * Constructor for setting up an evaluator with an empty formula which only calculates faculties of the inline path
+     *
+     * @param policy    precision policy of every reduction and the result
+     * @param estimator decides which faculties are calculated, null for all of them
+     */
+    public IncrementalEvaluator(PrecisionPolicy policy, CostEstimator estimator) {
+        this.policy = policy;
+        this.estimator = estimator;
+        states[0] = State.EMPTY;
+    }
+
+    /**
+     * Appends the next CalculatorCharacter of the formula and reduces it into the current state
+     *
+     * @param cc appended CalculatorCharacter
+     */
+    public void append(CalculatorCharacter cc) {
+        if (size + 1 == states.length) {
+            states = Arrays.copyOf(states, states.length * 2);
+        }
+        states[size + 1] = states[size].next(cc, policy, estimator);
+        size++;
+    }
+
+    /**
+     * Removes the last CalculatorCharacter, the state before it is still known
+     */
+    public void removeLast() {
+        if (size > 0) {
+            states[size--] = null;
+        }
+    }
+
+    /**
+     * Removes all CalculatorCharacters
+     */
+    public void clear() {
+        Arrays.fill(states, 1, size + 1, null);
+        size = 0;
+    }
+
+    /**
+     * Returns the amount of appended CalculatorCharacters
+     *
+     * @return size of the formula
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the result of the formula as if it would end after the last appended character (missing brackets closed)
+     * Only the open brackets get reduced, everything before is already calculated
+     *
+     * @return result of the formula, null if the formula contains no values
+     * @throws CalculatorException same exceptions as Calculator.calculateCCS()
+     */
+    public BigDecimal getResult() throws CalculatorException {
+        return states[size].getResult(policy);
+    }
+
+    /**
+     * Immutable state after a character: the innermost open bracket and errors which can't be undone by appending more characters
+     */
+    private static final class State {
+        private static final State EMPTY = new State(Frame.EMPTY, 0, false, null);
+        private final Frame frame;
+        private final int depth;
+        //Misplaced character, every following state is a bad expression too
+        private final boolean badExpression;
+        //Exception of an already calculated reduction (eg. division by zero)
+        private final CalculatorException calculationException;
+
+        private State(Frame frame, int depth, boolean badExpression, CalculatorException calculationException) {
+            this.frame = frame;
+            this.depth = depth;
+            this.badExpression = badExpression;
+            this.calculationException = calculationException;
+        }
+
+        /**
+         * Returns the state after reducing the next character
+         *
+         * @param cc        next CalculatorCharacter
+         * @param policy    precision policy of the reductions
+         * @param estimator decides which faculties are calculated, null for all of them
+         * @return new state (or this if the character changes nothing)
+         */
+        private State next(CalculatorCharacter cc, PrecisionPolicy policy, CostEstimator estimator) {
+            if (badExpression) {
+                return this;
+            }
+            Reduction reduction = new Reduction(policy, estimator, calculationException);
+            Frame f = frame;
+            int d = depth;
+            if (cc instanceof CalculatorValues) {
+                if (f.operand != null) {
+                    f = f.withOperation(reduction, SupportedOperations.Multiply);
+                }
+                f = f.withOperand(reduction.value((CalculatorValues) cc));
+            } else if (cc instanceof CalculatorSeparator) {
+                CalculatorSeparatorEnum separator = ((CalculatorSeparator) cc).getSeparator();
+                if (separator == CalculatorSeparatorEnum.LeftBracket) {
+                    if (f.operand != null) {
+                        f = f.withOperation(reduction, SupportedOperations.Multiply);
+                    }
+                    f = new Frame(f);
+                    d++;
+                } else if (separator == CalculatorSeparatorEnum.RightBracket && d > 0) {
+                    if (f.isIncomplete()) {
+                        return bad();
+                    }
+                    f = f.parent.withOperand(f.reduce(reduction));
+                    d--;
+                } else {
+                    //Decimal separators and right brackets without left bracket are ignored
+                    return this;
+                }
+            } else if (cc instanceof CalculatorOperation) {
+                SupportedOperations operation = ((CalculatorOperation) cc).getOperation();
+                if (operation == SupportedOperations.Sub && f.isGroupBegin()) {
+                    f = f.withUnaryMinus();
+                } else if (f.operand == null) {
+                    return bad();
+                } else if (operation == SupportedOperations.Faculty) {
+                    f = f.withOperand(reduction.faculty(f.operand));
+                } else {
+                    f = f.withOperation(reduction, operation);
+                }
+            }
+            return new State(f, d, false, reduction.exception);
+        }
+
+        private State bad() {
+            return new State(frame, depth, true, calculationException);
+        }
+
+        /**
+         * Closes all open brackets and returns the result
+         *
+         * @param policy precision policy of the reductions and the result
+         * @return result, null if the formula contains no values
+         * @throws CalculatorException if the formula is not logical or a reduction failed
+         */
+        private BigDecimal getResult(PrecisionPolicy policy) throws CalculatorException {
+            //Checks the formula before calculating like the ExpressionCompiler
+            if (badExpression || (frame.operand == null && frame.mulOp != null) || (depth > 0 && frame.isEmpty())) {
+                throw new BadExpressionException();
+            }
+            if (calculationException != null) {
+                throw calculationException;
+            }
+            Reduction reduction = new Reduction(policy, null, null);
+            BigDecimal result = frame.reduce(reduction);
+            for (Frame f = frame.parent; f != null; f = f.parent) {
+                result = f.withOperand(result).reduce(reduction);
+            }
+            if (reduction.exception != null) {
+                throw reduction.exception;
+            }
+            return policy.roundResult(result);
+        }
+    }
+
+    /**
+     * Immutable reduction state of one bracket (or the whole formula): sum (+/-) of finished terms, product (×/÷) of the current term and the last value
+     */
+    private static final class Frame {
+        private static final Frame EMPTY = new Frame(null);
+        //State of the surrounding bracket
+        private final Frame parent;
+        //Bracket starts with a minus which negates the first term
+        private final boolean negate;
+        //Sum of the finished terms and the add/sub operation before the current term
+        private final BigDecimal sum;
+        private final SupportedOperations addOp;
+        //Product of the finished values of the current term and the multiply/divide operation before the last value
+        private final BigDecimal term;
+        private final SupportedOperations mulOp;
+        //Last value, null if an operation (or the bracket begin) was last
+        private final BigDecimal operand;
+
+        private Frame(Frame parent) {
+            this(parent, false, null, null, null, null, null);
+        }
+
+        private Frame(Frame parent, boolean negate, BigDecimal sum, SupportedOperations addOp, BigDecimal term, SupportedOperations mulOp, BigDecimal operand) {
+            this.parent = parent;
+            this.negate = negate;
+            this.sum = sum;
+            this.addOp = addOp;
+            this.term = term;
+            this.mulOp = mulOp;
+            this.operand = operand;
+        }
+
+        private boolean isEmpty() {
+            return sum == null && term == null && operand == null;
+        }
+
+        private boolean isGroupBegin() {
+            return isEmpty() && !negate;
+        }
+
+        /**
+         * Returns true if the bracket can't be closed (empty, only a minus or ending with multiply/divide)
+         */
+        private boolean isIncomplete() {
+            return operand == null && (mulOp != null || sum == null);
+        }
+
+        private Frame withUnaryMinus() {
+            return new Frame(parent, true, null, null, null, null, null);
+        }
+
+        private Frame withOperand(BigDecimal value) {
+            return new Frame(parent, negate, sum, addOp, term, mulOp, value);
+        }
+
+        /**
+         * Returns the frame after the binary operation, reduces everything with a higher or same priority
+         *
+         * @param reduction current reduction
+         * @param operation add, sub, multiply or divide
+         * @return frame waiting for the next value
+         */
+        private Frame withOperation(Reduction reduction, SupportedOperations operation) {
+            BigDecimal product = term == null ? operand : reduction.calculate(mulOp, term, operand);
+            if (operation == SupportedOperations.Multiply || operation == SupportedOperations.Divide) {
+                return new Frame(parent, negate, sum, addOp, product, operation, null);
+            }
+            return new Frame(parent, negate, addTerm(reduction, product), operation, null, null, null);
+        }
+
+        /**
+         * Reduces the frame into a single value, a trailing add/sub is ignored
+         *
+         * @param reduction current reduction
+         * @return value of the bracket, null if empty
+         */
+        private BigDecimal reduce(Reduction reduction) {
+            if (operand == null) {
+                return sum;
+            }
+            return addTerm(reduction, term == null ? operand : reduction.calculate(mulOp, term, operand));
+        }
+
+        private BigDecimal addTerm(Reduction reduction, BigDecimal product) {
+            if (sum == null) {
+                return negate ? reduction.negate(product) : product;
+            }
+            return reduction.calculate(addOp, sum, product);
+        }
+    }
+
+    /**
+     * Calculates the reductions of one step and keeps the first exception
+     * Once a reduction failed the following reductions are skipped, the exception stays part of every later state
+     */
+    private static final class Reduction {
+        private final PrecisionPolicy policy;
+        private final CostEstimator estimator;
+        private CalculatorException exception;
+
+        private Reduction(PrecisionPolicy policy, CostEstimator estimator, CalculatorException exception) {
+            this.policy = policy;
+            this.estimator = estimator;
+            this.exception = exception;
+        }
+
+        private BigDecimal value(CalculatorValues cc) {
+            if (cc instanceof CalculatorConstant) {
+                return ConstantProvider.getValue(((CalculatorConstant) cc).getConstant(), policy.getWorkingContext());
+            }
+            BigDecimal value = cc.getValue();
+            if (value == null) {
+                fail(new BadExpressionException());
+                return BigDecimal.ZERO;
+            }
+            return value;
+        }
+
+        private BigDecimal calculate(SupportedOperations operation, BigDecimal x, BigDecimal y) {
+            if (exception == null) {
+                try {
+                    return Calculator.calculateSingleOperation(operation, x, y, policy);
+                } catch (CalculatorException e) {
+                    fail(e);
+                }
+            }
+            return x;
+        }
+
+        private BigDecimal faculty(BigDecimal x) {
+            if (exception == null && estimator != null && !estimator.isInlineFaculty(x)) {
+                fail(new LimitExceededException("Faculty input is too expensive for the inline path"));
+            }
+            if (exception == null) {
+                try {
+                    return Calculator.getFaculty(x);
+                } catch (CalculatorException e) {
+                    fail(e);
+                }
+            }
+            return x;
+        }
+
+        private BigDecimal negate(BigDecimal x) {
+            return exception == null ? x.negate() : x;
+        }
+
+        private void fail(CalculatorException e) {
+            if (exception == null) {
+                exception = e;
+            }
+        }
+    }
+}
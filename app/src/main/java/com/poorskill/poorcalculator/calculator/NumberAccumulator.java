@@ -0,0 +1,356 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorNumber;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Accumulates the digits of the number which is currently typed
+ * <p>
+ * Digits are kept as they were typed (including trailing zeros). The unscaled value is kept incrementally as long[] of
+ * completed 18 digit chunks (base 10^18 limbs) and a long of the remaining digits, so appending or removing a digit is O(1) and
+ * no BigInteger is built while typing. toNumber() returns a CalculatorNumber which shares this state and builds its BigDecimal
+ * on the first getValue(), numbers with more digits than a long are shown straight out of the typed digits.
+ */
+public final class NumberAccumulator {
+    private static final int MAX_LONG_DIGITS = 18;
+    private static final BigInteger CHUNK = BigInteger.TEN.pow(MAX_LONG_DIGITS);
+    private static final long[] POWERS_OF_TEN = new long[MAX_LONG_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private byte[] digits = new byte[32];
+    private int count;
+    //Digits of the current array which are read by numbers returned by toNumber(), overwriting them copies the array first
+    private int sharedCount;
+    //Amount of digits before the decimal separator, -1 if there is no separator
+    private int separatorPosition = -1;
+    private boolean negative;
+    //Unscaled value of all digits = chunks[0..chunkCount) in base 10^18 * 10^tailCount + tail
+    private long[] chunks = new long[2];
+    private int chunkCount;
+    //Chunks of the current array which are read by numbers returned by toNumber(), like sharedCount
+    private int sharedChunkCount;
+    private long tail;
+    private int tailCount;
+    //Positions of the digits which aren't zero, the last one gives the amount of trailing zeros
+    private int[] nonZeroPositions = new int[32];
+    private int nonZeroCount;
+    //Number of the current digits, null after every change
+    private TypedNumber number;
+
+    /**
+     * Appends a digit
+     *
+     * @param digit 0-9
+     */
+    public void appendDigit(int digit) {
+        if (digit < 0 || digit > 9) {
+            throw new IllegalArgumentException("digit must be 0-9");
+        }
+        if (count == digits.length) {
+            digits = Arrays.copyOf(digits, count * 2);
+            sharedCount = 0;
+        } else if (count < sharedCount) {
+            //A returned number still reads the digit which gets overwritten
+            digits = Arrays.copyOf(digits, digits.length);
+            sharedCount = 0;
+        }
+        if (digit != 0) {
+            if (nonZeroCount == nonZeroPositions.length) {
+                nonZeroPositions = Arrays.copyOf(nonZeroPositions, nonZeroCount * 2);
+            }
+            nonZeroPositions[nonZeroCount++] = count;
+        }
+        digits[count++] = (byte) digit;
+        tail = tail * 10 + digit;
+        if (++tailCount == MAX_LONG_DIGITS) {
+            appendChunk(tail);
+            tail = 0;
+            tailCount = 0;
+        }
+        number = null;
+    }
+
+    private void appendChunk(long chunk) {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            sharedChunkCount = 0;
+        } else if (chunkCount < sharedChunkCount) {
+            //A returned number still reads the chunk which gets overwritten
+            chunks = Arrays.copyOf(chunks, chunks.length);
+            sharedChunkCount = 0;
+        }
+        chunks[chunkCount++] = chunk;
+    }
+
+    /**
+     * Appends the decimal separator
+     *
+     * @return false if the number already has a decimal separator
+     */
+    public boolean appendSeparator() {
+        if (separatorPosition >= 0) {
+            return false;
+        }
+        separatorPosition = count;
+        number = null;
+        return true;
+    }
+
+    /**
+     * Removes the last typed digit or decimal separator
+     *
+     * @return false if there was nothing to remove
+     */
+    public boolean removeLast() {
+        if (endsWithSeparator()) {
+            separatorPosition = -1;
+        } else if (count > 0) {
+            count--;
+            if (tailCount == 0) {
+                tail = chunks[--chunkCount];
+                tailCount = MAX_LONG_DIGITS;
+            }
+            tail /= 10;
+            tailCount--;
+            if (nonZeroCount > 0 && nonZeroPositions[nonZeroCount - 1] == count) {
+                nonZeroCount--;
+            }
+        } else {
+            return false;
+        }
+        if (count == 0 && separatorPosition < 0) {
+            negative = false;
+        }
+        number = null;
+        return true;
+    }
+
+    /**
+     * Replaces the digits with the digits of the value, used to edit an already finished number
+     *
+     * @param number value to edit
+     */
+    public void set(BigDecimal number) {
+        clear();
+        BigDecimal stripped = number.stripTrailingZeros();
+        if (stripped.scale() < 0) {
+            stripped = stripped.setScale(0);
+        }
+        String unscaled = stripped.unscaledValue().abs().toString();
+        int scale = stripped.scale();
+        //Leading zeros of values below one (eg. 0.05)
+        for (int i = unscaled.length(); i <= scale; ++i) {
+            appendDigit(0);
+        }
+        for (int i = 0; i < unscaled.length(); ++i) {
+            appendDigit(unscaled.charAt(i) - '0');
+        }
+        if (scale > 0) {
+            separatorPosition = count - scale;
+        }
+        negative = stripped.signum() < 0;
+    }
+
+    /**
+     * Removes all digits
+     */
+    public void clear() {
+        count = 0;
+        separatorPosition = -1;
+        negative = false;
+        chunkCount = 0;
+        tail = 0;
+        tailCount = 0;
+        nonZeroCount = 0;
+        number = null;
+    }
+
+    public boolean isEmpty() {
+        return count == 0 && separatorPosition < 0;
+    }
+
+    public boolean isDecimal() {
+        return separatorPosition >= 0;
+    }
+
+    /**
+     * Returns true if the decimal separator was typed last (eg. "2.")
+     *
+     * @return true if no digit follows the decimal separator
+     */
+    public boolean endsWithSeparator() {
+        return separatorPosition == count;
+    }
+
+    /**
+     * Returns the typed number as CalculatorNumber, later changes of the accumulator don't change the returned number
+     * The number takes O(1) to create, its BigDecimal is built on the first getValue()
+     *
+     * @return number of the typed digits
+     */
+    public CalculatorNumber toNumber() {
+        if (number == null) {
+            sharedCount = Math.max(sharedCount, count);
+            sharedChunkCount = Math.max(sharedChunkCount, chunkCount);
+            number = new TypedNumber(this);
+        }
+        return number;
+    }
+
+    /**
+     * Returns the amount of zeros at the end of the typed digits (eg. "1.500" -> 2)
+     *
+     * @return trailing zeros of the digits
+     */
+    int getTrailingZeros() {
+        return count - (nonZeroCount == 0 ? 0 : nonZeroPositions[nonZeroCount - 1] + 1);
+    }
+
+    /**
+     * Returns the typed number without trailing zeros (eg. "2.50" -> 2.5)
+     *
+     * @return value of the digits, zero if there are no digits
+     */
+    public BigDecimal getValue() {
+        return toNumber().getValue();
+    }
+
+    /**
+     * CalculatorNumber of the state of the accumulator when it was created, its value is calculated once on demand
+     */
+    private static final class TypedNumber extends CalculatorNumber {
+        private static final long serialVersionUID = 1L;
+        private final byte[] digits;
+        private final int count;
+        private final int separatorPosition;
+        private final boolean negative;
+        private final long[] chunks;
+        private final int chunkCount;
+        private final long tail;
+        private final int tailCount;
+        private final int trailingZeros;
+        private volatile BigDecimal value;
+
+        private TypedNumber(NumberAccumulator accumulator) {
+            super(null);
+            this.digits = accumulator.digits;
+            this.count = accumulator.count;
+            this.separatorPosition = accumulator.separatorPosition;
+            this.negative = accumulator.negative;
+            this.chunks = accumulator.chunks;
+            this.chunkCount = accumulator.chunkCount;
+            this.tail = accumulator.tail;
+            this.tailCount = accumulator.tailCount;
+            this.trailingZeros = accumulator.getTrailingZeros();
+        }
+
+        /**
+         * Builds the value without trailing zeros (eg. "2.50" -> 2.5, "100" -> 1E+2) like stripTrailingZeros() would
+         *
+         * @return value of the digits, zero if there are no digits
+         */
+        @Override
+        public BigDecimal getValue() {
+            BigDecimal result = value;
+            if (result == null) {
+                int scale = (separatorPosition < 0 ? 0 : count - separatorPosition) - trailingZeros;
+                if (trailingZeros == count) {
+                    result = BigDecimal.ZERO;
+                } else if (chunkCount == 0) {
+                    long unscaled = tail / POWERS_OF_TEN[trailingZeros];
+                    result = BigDecimal.valueOf(negative ? -unscaled : unscaled, scale);
+                } else {
+                    BigInteger unscaled = BigInteger.ZERO;
+                    for (int i = 0; i < chunkCount; ++i) {
+                        unscaled = unscaled.multiply(CHUNK).add(BigInteger.valueOf(chunks[i]));
+                    }
+                    unscaled = unscaled.multiply(BigInteger.valueOf(POWERS_OF_TEN[tailCount])).add(BigInteger.valueOf(tail));
+                    if (trailingZeros > 0) {
+                        unscaled = unscaled.divide(BigInteger.TEN.pow(trailingZeros));
+                    }
+                    result = new BigDecimal(negative ? unscaled.negate() : unscaled, scale);
+                }
+                value = result;
+            }
+            return result;
+        }
+
+        /**
+         * Numbers which fit into a long are formatted like every other number,
+         * longer numbers are written out of the typed digits with thousand separators and without trailing zeros
+         *
+         * @return value of number in String
+         */
+        @Override
+        public String toStringValue() {
+            if (count <= MAX_LONG_DIGITS) {
+                return super.toStringValue();
+            }
+            DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+            int integerEnd = separatorPosition < 0 ? count : separatorPosition;
+            int start = 0;
+            while (start < integerEnd - 1 && digits[start] == 0) {
+                start++;
+            }
+            int end = count;
+            while (end > integerEnd && digits[end - 1] == 0) {
+                end--;
+            }
+            StringBuilder sb = new StringBuilder(end - start + (integerEnd - start) / 3 + 2);
+            if (negative) {
+                sb.append(symbols.getMinusSign());
+            }
+            for (int i = start; i < integerEnd; ++i) {
+                sb.append((char) ('0' + digits[i]));
+                if (i < integerEnd - 1 && (integerEnd - i - 1) % 3 == 0) {
+                    sb.append(symbols.getGroupingSeparator());
+                }
+            }
+            if (end > integerEnd) {
+                sb.append(symbols.getDecimalSeparator());
+                for (int i = integerEnd; i < end; ++i) {
+                    sb.append((char) ('0' + digits[i]));
+                }
+            }
+            return sb.toString();
+        }
+
+        //Serialized as plain CalculatorNumber, the shared digits aren't written
+        private Object writeReplace() {
+            return new CalculatorNumber(getValue());
+        }
+    }
+}
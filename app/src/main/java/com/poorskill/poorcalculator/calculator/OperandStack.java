@@ -0,0 +1,275 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
+import com.poorskill.poorcalculator.calculator.exceptions.BadExpressionException;
+import com.poorskill.poorcalculator.calculator.exceptions.CancelledException;
+import com.poorskill.poorcalculator.calculator.exceptions.DividedByZeroException;
+import com.poorskill.poorcalculator.calculator.exceptions.LimitExceededException;
+
+import java.math.BigDecimal;
+
+/**
+ * Operand stack of the ExpressionPlan with two tiers of arithmetic
+ * <p>
+ * Values are kept as long mantissa and scale (value = mantissa * 10^-scale) as long as they fit,
+ * add/sub/multiply/negate and divisions with a terminating quotient are calculated with Math.*Exact
+ * and only promoted to BigDecimal if a result overflows or needs rounding.
+ * The results are exactly the same BigDecimals (value and scale) as Calculator.calculateSingleOperation() would return.
+ */
+final class OperandStack {
+    //Highest mantissa which is always safe to read from a BigDecimal (precision <= 18)
+    static final int MAX_LONG_PRECISION = 18;
+    private static final long[] POWERS_OF_TEN = new long[MAX_LONG_PRECISION + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final long[] mantissas;
+    private final int[] scales;
+    //BigDecimal value of the slot, null if the slot is in the long tier
+    private final BigDecimal[] values;
+    private int size;
+    private final PrecisionPolicy policy;
+    //Results of the long tier with more digits (and decimal places) need rounding -> BigDecimal tier
+    private final int workingPrecision;
+
+    /**
+     * Constructor for setting up an empty stack
+     *
+     * @param capacity highest amount of values on the stack
+     * @param policy   precision policy of the evaluation
+     */
+    OperandStack(int capacity, PrecisionPolicy policy) {
+        this.mantissas = new long[capacity];
+        this.scales = new int[capacity];
+        this.values = new BigDecimal[capacity];
+        this.policy = policy;
+        this.workingPrecision = policy.getWorkingContext().getPrecision();
+    }
+
+    /**
+     * Pushes a value of the long tier
+     *
+     * @param mantissa unscaled value
+     * @param scale    scale of the value
+     */
+    void push(long mantissa, int scale) {
+        mantissas[size] = mantissa;
+        scales[size] = scale;
+        values[size++] = null;
+    }
+
+    /**
+     * Pushes a value of the BigDecimal tier
+     *
+     * @param value value as BigDecimal
+     */
+    void push(BigDecimal value) {
+        values[size++] = value;
+    }
+
+    /**
+     * Removes the top value and returns it as BigDecimal
+     *
+     * @return top value
+     */
+    BigDecimal pop() {
+        --size;
+        return values[size] != null ? values[size] : BigDecimal.valueOf(mantissas[size], scales[size]);
+    }
+
+    /**
+     * Calculates the binary operation with the two top values and replaces them with the result
+     *
+     * @param operation add, sub, multiply or divide
+     * @throws DividedByZeroException if the top value is zero for divide
+     * @throws BadExpressionException if a value is missing
+     */
+    void calculate(SupportedOperations operation) throws DividedByZeroException, BadExpressionException {
+        int y = --size, x = size - 1;
+        if (values[x] == null && values[y] == null) {
+            switch (operation) {
+                case Add:
+                    if (add(x, mantissas[y], scales[y])) {
+                        return;
+                    }
+                    break;
+                case Sub:
+                    if (mantissas[y] != Long.MIN_VALUE && add(x, -mantissas[y], scales[y])) {
+                        return;
+                    }
+                    break;
+                case Multiply:
+                    if (multiply(x, y)) {
+                        return;
+                    }
+                    break;
+                case Divide:
+                    if (mantissas[y] != 0 && divide(x, y)) {
+                        return;
+                    }
+                    break;
+            }
+        }
+        values[x] = Calculator.calculateSingleOperation(operation, get(x), get(y), policy);
+    }
+
+    /**
+     * Negates the top value
+     */
+    void negate() {
+        int x = size - 1;
+        if (values[x] == null && mantissas[x] != Long.MIN_VALUE) {
+            mantissas[x] = -mantissas[x];
+        } else {
+            values[x] = get(x).negate();
+        }
+    }
+
+    /**
+     * Replaces the top value with its faculty
+     *
+     * @throws LimitExceededException if the top value is above the faculty limit
+     * @throws CancelledException     if the thread got interrupted
+     */
+    void faculty() throws LimitExceededException, CancelledException {
+        int x = size - 1;
+        values[x] = Calculator.getFaculty(get(x));
+    }
+
+    /**
+     * Adds mantissa*10^-scale to the slot x in the long tier, the result gets the bigger scale of both (like BigDecimal.add)
+     *
+     * @return false if the result doesn't fit into a long
+     */
+    private boolean add(int x, long mantissa, int scale) {
+        long xMantissa = mantissas[x];
+        int xScale = scales[x];
+        try {
+            if (xScale < scale) {
+                xMantissa = rescale(xMantissa, scale - xScale);
+                xScale = scale;
+            } else if (scale < xScale) {
+                mantissa = rescale(mantissa, xScale - scale);
+            }
+            mantissas[x] = Math.addExact(xMantissa, mantissa);
+            scales[x] = xScale;
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Multiplies the slots x and y in the long tier, the result gets the sum of both scales (like BigDecimal.multiply)
+     *
+     * @return false if the result doesn't fit into a long
+     */
+    private boolean multiply(int x, int y) {
+        try {
+            long mantissa = Math.multiplyExact(mantissas[x], mantissas[y]);
+            int scale = Math.addExact(scales[x], scales[y]);
+            if (scale > 0 && getDigits(mantissa) > workingPrecision) {
+                return false;
+            }
+            mantissas[x] = mantissa;
+            scales[x] = scale;
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Divides the slot x by the slot y (not zero) in the long tier if the quotient terminates within a long
+     * Like BigDecimal.divide(MathContext) the exact quotient gets the preferred scale (x.scale - y.scale) or the smallest scale above it
+     *
+     * @return false if the quotient doesn't terminate, doesn't fit into a long or needs rounding
+     */
+    private boolean divide(int x, int y) {
+        long dividend = mantissas[x], divisor = mantissas[y];
+        if (dividend == Long.MIN_VALUE && divisor == -1) {
+            return false;
+        }
+        try {
+            for (int digits = 0; digits <= MAX_LONG_PRECISION; ++digits) {
+                if (dividend % divisor == 0) {
+                    long quotient = dividend / divisor;
+                    if (getDigits(quotient) > workingPrecision) {
+                        return false;
+                    }
+                    mantissas[x] = quotient;
+                    scales[x] = Math.addExact(scales[x] - scales[y], digits);
+                    return true;
+                }
+                dividend = Math.multiplyExact(dividend, 10);
+            }
+        } catch (ArithmeticException e) {
+            //Quotient needs more digits than a long
+        }
+        return false;
+    }
+
+    /**
+     * Returns the amount of decimal digits of the mantissa
+     */
+    private static int getDigits(long mantissa) {
+        if (mantissa == Long.MIN_VALUE) {
+            return MAX_LONG_PRECISION + 1;
+        }
+        long abs = Math.abs(mantissa);
+        int digits = 1;
+        while (digits <= MAX_LONG_PRECISION && abs >= POWERS_OF_TEN[digits]) {
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * Multiplies the mantissa with 10^digits
+     *
+     * @throws ArithmeticException if the result doesn't fit into a long
+     */
+    private static long rescale(long mantissa, int digits) {
+        if (digits > MAX_LONG_PRECISION) {
+            if (mantissa == 0) {
+                return 0;
+            }
+            throw new ArithmeticException();
+        }
+        return Math.multiplyExact(mantissa, POWERS_OF_TEN[digits]);
+    }
+
+    /**
+     * Returns the slot as BigDecimal (promotes values of the long tier)
+     */
+    private BigDecimal get(int slot) {
+        return values[slot] != null ? values[slot] : BigDecimal.valueOf(mantissas[slot], scales[slot]);
+    }
+}
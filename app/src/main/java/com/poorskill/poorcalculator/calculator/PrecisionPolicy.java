@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Immutable precision policy of an evaluation, replaces the old fixed division scale of 100 digits
+ * <p>
+ * Divisions (and products with decimal places) are rounded to the working precision, which is the amount of significant digits plus some guard digits.
+ * The result is rounded to the significant digits at the end, so the rounding errors of the single operations stay in the guard digits.
+ * Integer values are never rounded, additions/subtractions and integer products stay exact.
+ */
+public final class PrecisionPolicy {
+    //Cheap mode for displaying results, the display shows only a few decimal places anyway
+    public static final PrecisionPolicy DISPLAY = new PrecisionPolicy(20, 5);
+    //Default mode with the precision of IEEE 754 decimal128
+    public static final PrecisionPolicy STANDARD = new PrecisionPolicy(MathContext.DECIMAL128.getPrecision(), 6);
+    //Mode for exact work, about the precision of the old fixed division scale
+    public static final PrecisionPolicy EXTENDED = new PrecisionPolicy(100, 10);
+
+    private final int digits;
+    private final int guardDigits;
+    private final MathContext workingContext;
+    private final MathContext resultContext;
+
+    /**
+     * Constructor for setting up a policy
+     *
+     * @param digits      significant digits of the result
+     * @param guardDigits additional digits of every intermediate result
+     */
+    public PrecisionPolicy(int digits, int guardDigits) {
+        if (digits < 1 || guardDigits < 0) {
+            throw new IllegalArgumentException("digits must be positive and guardDigits not negative");
+        }
+        this.digits = digits;
+        this.guardDigits = guardDigits;
+        this.workingContext = new MathContext(digits + guardDigits, RoundingMode.HALF_UP);
+        this.resultContext = new MathContext(digits, RoundingMode.HALF_UP);
+    }
+
+    public int getDigits() {
+        return this.digits;
+    }
+
+    public int getGuardDigits() {
+        return this.guardDigits;
+    }
+
+    /**
+     * Returns the MathContext of intermediate results (digits + guard digits)
+     *
+     * @return working MathContext
+     */
+    public MathContext getWorkingContext() {
+        return this.workingContext;
+    }
+
+    /**
+     * Returns the MathContext of the result
+     *
+     * @return result MathContext
+     */
+    public MathContext getResultContext() {
+        return this.resultContext;
+    }
+
+    /**
+     * Divides x by y with the working precision
+     *
+     * @param x dividend
+     * @param y divisor (not zero)
+     * @return quotient, exact if it fits into the working precision or is an integer
+     */
+    public BigDecimal divide(BigDecimal x, BigDecimal y) {
+        BigDecimal quotient = x.divide(y, workingContext);
+        if (quotient.precision() < workingContext.getPrecision()) {
+            return quotient;
+        }
+        //Quotient might be rounded, integer quotients stay exact
+        BigDecimal[] integerQuotient = x.divideAndRemainder(y);
+        return integerQuotient[1].signum() == 0 ? integerQuotient[0] : quotient;
+    }
+
+    /**
+     * Rounds an intermediate result to the working precision if it has decimal places
+     *
+     * @param value intermediate result
+     * @return rounded intermediate result
+     */
+    public BigDecimal roundIntermediate(BigDecimal value) {
+        return round(value, workingContext);
+    }
+
+    /**
+     * Rounds the result of an evaluation to the significant digits if it has decimal places
+     *
+     * @param value result of the evaluation
+     * @return rounded result, null if the value is null
+     */
+    public BigDecimal roundResult(BigDecimal value) {
+        return value == null ? null : round(value, resultContext);
+    }
+
+    /**
+     * Two policies are equal if they have the same digits and guard digits
+     *
+     * @param o other object
+     * @return true if o is a PrecisionPolicy with the same precision
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PrecisionPolicy)) {
+            return false;
+        }
+        PrecisionPolicy other = (PrecisionPolicy) o;
+        return digits == other.digits && guardDigits == other.guardDigits;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * digits + guardDigits;
+    }
+
+    private static BigDecimal round(BigDecimal value, MathContext mc) {
+        if (value.scale() > 0 && value.precision() > mc.getPrecision()) {
+            return value.round(mc);
+        }
+        return value;
+    }
+}
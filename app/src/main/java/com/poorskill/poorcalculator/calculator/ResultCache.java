@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least recently used cache of evaluation results, used by Calculator.calculateCCS()
+ * <p>
+ * Bounded by the amount of entries and by the weight of all entries (characters of the formula + digits of the result),
+ * so a few huge results (eg. faculties) can't fill the memory. Counts hits, misses and evictions for tuning the bounds.
+ * Thread-safe, all methods are synchronized.
+ */
+public final class ResultCache {
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final long DEFAULT_MAX_WEIGHT = 1L << 20;
+
+    private final int maxEntries;
+    private final long maxWeight;
+    //Access ordered, the first entry is the least recently used
+    private final LinkedHashMap<FormulaKey, BigDecimal> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits, misses, evictions;
+
+    /**
+     * Constructor for setting up an empty cache
+     *
+     * @param maxEntries highest amount of results
+     * @param maxWeight  highest sum of characters and result digits
+     */
+    public ResultCache(int maxEntries, long maxWeight) {
+        if (maxEntries < 0 || maxWeight < 0) {
+            throw new IllegalArgumentException("bounds must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the cached result of the formula and counts the hit or miss
+     *
+     * @param key canonical formula
+     * @return result, null if not cached
+     */
+    synchronized BigDecimal get(FormulaKey key) {
+        BigDecimal result = results.get(key);
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the result of the formula is cached, doesn't count as hit or miss
+     *
+     * @param key canonical formula
+     * @return true if get() would return the result
+     */
+    synchronized boolean contains(FormulaKey key) {
+        return results.containsKey(key);
+    }
+
+    /**
+     * Adds the result of the formula and evicts the least recently used results until the cache is within its bounds
+     * Results which are heavier than the whole cache are not added
+     *
+     * @param key    canonical formula
+     * @param result result of the formula (not null)
+     */
+    synchronized void put(FormulaKey key, BigDecimal result) {
+        long entryWeight = getWeight(key, result);
+        if (entryWeight > maxWeight || maxEntries == 0) {
+            return;
+        }
+        BigDecimal old = results.put(key, result);
+        weight += old == null ? entryWeight : entryWeight - getWeight(key, old);
+        Iterator<Map.Entry<FormulaKey, BigDecimal>> iterator = results.entrySet().iterator();
+        while (results.size() > maxEntries || weight > maxWeight) {
+            Map.Entry<FormulaKey, BigDecimal> eldest = iterator.next();
+            weight -= getWeight(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes all results, the counters are kept
+     */
+    public synchronized void clear() {
+        results.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private static long getWeight(FormulaKey key, BigDecimal result) {
+        return key.size() + (long) result.precision();
+    }
+}
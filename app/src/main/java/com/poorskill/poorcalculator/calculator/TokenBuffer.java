@@ -0,0 +1,271 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorConstant;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorNumber;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorOperation;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorSeparator;
+import com.poorskill.poorcalculator.calculator.characters.supported.CalculatorSeparatorEnum;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedConstant;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Compact formula: one byte code per CalculatorCharacter and a pool of the numbers
+ * <p>
+ * Operations, separators and constants are only stored as code and returned as their shared instance (eg. CalculatorOperation.valueOf()),
+ * only numbers need an object. The compiler switches over the codes instead of checking the class of every character.
+ * asList() returns a List view, so callers which work with List of CalculatorCharacters keep working.
+ */
+public final class TokenBuffer {
+    //Codes of the characters
+    static final byte NUMBER = 0, ADD = 1, SUB = 2, MULTIPLY = 3, DIVIDE = 4, FACULTY = 5, LEFT_BRACKET = 6, RIGHT_BRACKET = 7, DECIMAL_SEPARATOR = 8, PI = 9, E = 10;
+    private static final CalculatorCharacter[] SHARED = {
+            null,
+            CalculatorOperation.valueOf(SupportedOperations.Add),
+            CalculatorOperation.valueOf(SupportedOperations.Sub),
+            CalculatorOperation.valueOf(SupportedOperations.Multiply),
+            CalculatorOperation.valueOf(SupportedOperations.Divide),
+            CalculatorOperation.valueOf(SupportedOperations.Faculty),
+            CalculatorSeparator.valueOf(CalculatorSeparatorEnum.LeftBracket),
+            CalculatorSeparator.valueOf(CalculatorSeparatorEnum.RightBracket),
+            CalculatorSeparator.valueOf(CalculatorSeparatorEnum.DecimalSeparator),
+            CalculatorConstant.valueOf(SupportedConstant.Pi),
+            CalculatorConstant.valueOf(SupportedConstant.E)
+    };
+
+    private byte[] codes = new byte[16];
+    //Numbers in order of the formula, a number is only added or removed at the end like the characters
+    private CalculatorNumber[] numbers = new CalculatorNumber[8];
+    //Index into numbers for every NUMBER code
+    private int[] numberIndex = new int[16];
+    private int size, numberCount;
+    private final View view = new View();
+
+    /**
+     * Appends a CalculatorCharacter
+     *
+     * @param cc appended character
+     */
+    public void add(CalculatorCharacter cc) {
+        byte code = getCode(cc);
+        if (size == codes.length) {
+            codes = Arrays.copyOf(codes, size * 2);
+            numberIndex = Arrays.copyOf(numberIndex, size * 2);
+        }
+        if (code == NUMBER) {
+            if (numberCount == numbers.length) {
+                numbers = Arrays.copyOf(numbers, numberCount * 2);
+            }
+            numberIndex[size] = numberCount;
+            numbers[numberCount++] = (CalculatorNumber) cc;
+        }
+        codes[size++] = code;
+        view.changed();
+    }
+
+    /**
+     * Removes the last CalculatorCharacter
+     *
+     * @return removed character
+     * @throws IndexOutOfBoundsException if the buffer is empty
+     */
+    public CalculatorCharacter removeLast() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("TokenBuffer is empty");
+        }
+        CalculatorCharacter removed = get(size - 1);
+        if (codes[--size] == NUMBER) {
+            numbers[--numberCount] = null;
+        }
+        view.changed();
+        return removed;
+    }
+
+    /**
+     * Removes all CalculatorCharacters
+     */
+    public void clear() {
+        Arrays.fill(numbers, 0, numberCount, null);
+        size = numberCount = 0;
+        view.changed();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the CalculatorCharacter at the index, the shared instance for everything except numbers
+     *
+     * @param index position in the formula
+     * @return character at the index
+     */
+    public CalculatorCharacter get(int index) {
+        byte code = getCode(index);
+        return code == NUMBER ? numbers[numberIndex[index]] : SHARED[code];
+    }
+
+    /**
+     * Returns the code of the character at the index
+     *
+     * @param index position in the formula
+     * @return code of the character
+     */
+    byte getCode(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return codes[index];
+    }
+
+    /**
+     * Returns a copy of the buffer, later changes of this buffer don't change the copy
+     * The numbers are immutable and shared, only the arrays get copied
+     *
+     * @return copy of the formula
+     */
+    public TokenBuffer snapshot() {
+        TokenBuffer copy = new TokenBuffer();
+        copy.codes = Arrays.copyOf(codes, codes.length);
+        copy.numbers = Arrays.copyOf(numbers, numbers.length);
+        copy.numberIndex = Arrays.copyOf(numberIndex, numberIndex.length);
+        copy.size = size;
+        copy.numberCount = numberCount;
+        return copy;
+    }
+
+    /**
+     * Returns a List view of the buffer which supports get, size, add, remove of the last element and clear
+     *
+     * @return List view, changes are written into the buffer
+     */
+    public List<CalculatorCharacter> asList() {
+        return view;
+    }
+
+    /**
+     * Returns the buffer of a List returned by asList()
+     *
+     * @param ccs any List of CalculatorCharacters
+     * @return buffer of the view, null if ccs is no view of a TokenBuffer
+     */
+    static TokenBuffer of(List<CalculatorCharacter> ccs) {
+        return ccs instanceof View ? ((View) ccs).getBuffer() : null;
+    }
+
+    private static byte getCode(CalculatorCharacter cc) {
+        if (cc instanceof CalculatorNumber) {
+            return NUMBER;
+        } else if (cc instanceof CalculatorOperation) {
+            switch (((CalculatorOperation) cc).getOperation()) {
+                case Add:
+                    return ADD;
+                case Sub:
+                    return SUB;
+                case Multiply:
+                    return MULTIPLY;
+                case Divide:
+                    return DIVIDE;
+                case Faculty:
+                    return FACULTY;
+            }
+        } else if (cc instanceof CalculatorSeparator) {
+            switch (((CalculatorSeparator) cc).getSeparator()) {
+                case LeftBracket:
+                    return LEFT_BRACKET;
+                case RightBracket:
+                    return RIGHT_BRACKET;
+                case DecimalSeparator:
+                    return DECIMAL_SEPARATOR;
+            }
+        } else if (cc instanceof CalculatorConstant) {
+            switch (((CalculatorConstant) cc).getConstant()) {
+                case Pi:
+                    return PI;
+                case E:
+                    return E;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported CalculatorCharacter " + cc);
+    }
+
+    /**
+     * List view of the buffer, only the end of the formula can be changed
+     */
+    private final class View extends AbstractList<CalculatorCharacter> implements RandomAccess {
+
+        private TokenBuffer getBuffer() {
+            return TokenBuffer.this;
+        }
+
+        //Lets iterators of the view fail fast on changes of the buffer
+        private void changed() {
+            modCount++;
+        }
+
+        @Override
+        public CalculatorCharacter get(int index) {
+            return TokenBuffer.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void add(int index, CalculatorCharacter cc) {
+            if (index != size) {
+                throw new UnsupportedOperationException("Characters can only be added at the end");
+            }
+            TokenBuffer.this.add(cc);
+        }
+
+        @Override
+        public CalculatorCharacter remove(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            if (index != size - 1) {
+                throw new UnsupportedOperationException("Only the last character can be removed");
+            }
+            return removeLast();
+        }
+
+        @Override
+        public void clear() {
+            TokenBuffer.this.clear();
+        }
+    }
+}
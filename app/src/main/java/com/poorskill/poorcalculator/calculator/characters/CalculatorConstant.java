@@ -22,10 +22,13 @@
  */
 package com.poorskill.poorcalculator.calculator.characters;
 
+import com.poorskill.poorcalculator.calculator.ConstantProvider;
+import com.poorskill.poorcalculator.calculator.PrecisionPolicy;
 import com.poorskill.poorcalculator.calculator.characters.supported.SupportedConstant;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.util.Objects;
 
 /**
  * CalculatorConstant inheritance CalculatorCharacter and implements CalculatorValues for getting the Value as BigDecimal, Serializable for saving purpose
@@ -33,8 +36,17 @@ import java.math.BigDecimal;
  * Represents the supported constants used in the calculator
  */
 public class CalculatorConstant extends CalculatorCharacter implements CalculatorValues, Serializable {
+    //Computed one of the first version, so the calculations of old history files are still read
+    private static final long serialVersionUID = 8330301617117574867L;
+    private static final CalculatorConstant[] INSTANCES = new CalculatorConstant[SupportedConstant.values().length];
     private SupportedConstant constant;
 
+    static {
+        for (SupportedConstant constant : SupportedConstant.values()) {
+            INSTANCES[constant.ordinal()] = new CalculatorConstant(constant);
+        }
+    }
+
     /**
      * Constructor for setting Constant up
      *
@@ -45,6 +57,16 @@ public class CalculatorConstant extends CalculatorCharacter implements Calculato
         this.constant = constant;
     }
 
+    /**
+     * Returns the shared instance of the constant, like valueOf() of the operations and separators
+     *
+     * @param constant supported constant
+     * @return shared CalculatorConstant
+     */
+    public static CalculatorConstant valueOf(SupportedConstant constant) {
+        return INSTANCES[constant.ordinal()];
+    }
+
     /**
      * Getter of Constant
      *
@@ -72,19 +94,35 @@ public class CalculatorConstant extends CalculatorCharacter implements Calculato
     }
 
     /**
-     * Returns the constant value as BigDecimal Value
-     * Since the more exact values than the Math.Constant values are unnecessary for this kind of learning project and non value-perfection calculators ...
+     * Returns the constant value as BigDecimal Value with the working precision of PrecisionPolicy.STANDARD
+     * Evaluations get the constant from the ConstantProvider with their own precision
      *
      * @return constant values in BigDecimal
      */
     @Override
     public BigDecimal getValue() {
-        switch (constant) {
-            case Pi:
-                return BigDecimal.valueOf(Math.PI);
-            case E:
-                return BigDecimal.valueOf(Math.E);
+        return ConstantProvider.getValue(constant, PrecisionPolicy.STANDARD.getWorkingContext());
+    }
+
+    /**
+     * Two CalculatorConstants are equal if their constant is equal
+     *
+     * @param o other object
+     * @return true if o is a CalculatorConstant with the same constant
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
         }
-        return null;
+        return Objects.equals(constant, ((CalculatorConstant) o).constant);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(constant);
     }
 }
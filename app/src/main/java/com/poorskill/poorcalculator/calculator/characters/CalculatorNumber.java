@@ -22,10 +22,10 @@
  */
 package com.poorskill.poorcalculator.calculator.characters;
 
-import android.annotation.SuppressLint;
-
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.Objects;
 
 import static com.poorskill.poorcalculator.calculator.Calculator.isIntegerValue;
 import static com.poorskill.poorcalculator.calculator.utility.CalculatorConverter.removeTrailingZeros;
@@ -55,17 +55,17 @@ public class CalculatorNumber extends CalculatorCharacter implements CalculatorV
      * Checks if the number isn't null, checks if integer or not and then uses String.format to format into String
      * usage of removeTrailingZeros() is not beautiful or efficient but to lazy to implement something different :)
      * <p>
-     * Ignores Locale since the calculator changes to the locale
+     * Uses the format locale of the device since the calculator changes to the locale
      *
      * @return value of number in String without trailingZeros (2.00 - > 2) (bad for user input since it also removes the zeros while typing decimal
      */
-    @SuppressLint("DefaultLocale")
     @Override
     public String toStringValue() {
-        if (numberValue == null) {
+        BigDecimal value = getValue();
+        if (value == null) {
             return "";
         }
-        return isIntegerValue(numberValue) ? String.format("%,d", numberValue.longValue()) : removeTrailingZeros(String.format("%,f", numberValue));
+        return isIntegerValue(value) ? String.format(Locale.getDefault(Locale.Category.FORMAT), "%,d", value.longValue()) : removeTrailingZeros(String.format(Locale.getDefault(Locale.Category.FORMAT), "%,f", value));
     }
 
 
@@ -78,4 +78,26 @@ public class CalculatorNumber extends CalculatorCharacter implements CalculatorV
     public BigDecimal getValue() {
         return this.numberValue;
     }
+
+    /**
+     * Two CalculatorNumbers are equal if their value (and scale) is equal
+     *
+     * @param o other object
+     * @return true if o is a CalculatorNumber with the same value (and scale)
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CalculatorNumber)) {
+            return false;
+        }
+        return Objects.equals(getValue(), ((CalculatorNumber) o).getValue());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getValue());
+    }
 }
@@ -25,6 +25,7 @@ package com.poorskill.poorcalculator.calculator.characters;
 import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
 
 import java.io.Serializable;
+import java.util.Objects;
 
 /**
  * CalculatorOperation inheritance CalculatorCharacter and implements Serializable for saving purpose
@@ -33,8 +34,15 @@ import java.io.Serializable;
  */
 public class CalculatorOperation extends CalculatorCharacter implements Serializable {
     private static final long serialVersionUID = 6529687098967057690L;
+    private static final CalculatorOperation[] INSTANCES = new CalculatorOperation[SupportedOperations.values().length];
     private SupportedOperations operation;
 
+    static {
+        for (SupportedOperations operation : SupportedOperations.values()) {
+            INSTANCES[operation.ordinal()] = new CalculatorOperation(operation);
+        }
+    }
+
     /**
      * Constructor for setting Operation up
      *
@@ -45,6 +53,17 @@ public class CalculatorOperation extends CalculatorCharacter implements Serializ
         this.operation = operation;
     }
 
+    /**
+     * Returns the shared instance of the operation
+     * CalculatorOperations are never changed, so one instance per operation is enough instead of allocating a new one for every character
+     *
+     * @param operation supported operation
+     * @return shared CalculatorOperation
+     */
+    public static CalculatorOperation valueOf(SupportedOperations operation) {
+        return INSTANCES[operation.ordinal()];
+    }
+
     /**
      * Getter of operation
      *
@@ -76,4 +95,26 @@ public class CalculatorOperation extends CalculatorCharacter implements Serializ
         }
         return operation.toString();
     }
+
+    /**
+     * Two CalculatorOperations are equal if their operation is equal
+     *
+     * @param o other object
+     * @return true if o is a CalculatorOperation with the same operation
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return Objects.equals(operation, ((CalculatorOperation) o).operation);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(operation);
+    }
 }
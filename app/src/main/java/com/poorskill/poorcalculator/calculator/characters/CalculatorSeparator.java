@@ -26,6 +26,7 @@ import com.poorskill.poorcalculator.calculator.characters.supported.CalculatorSe
 
 import java.io.Serializable;
 import java.text.DecimalFormatSymbols;
+import java.util.Objects;
 
 /**
  * CalculatorSeparator inheritance CalculatorCharacter and implements Serializable for saving purpose
@@ -34,8 +35,15 @@ import java.text.DecimalFormatSymbols;
  */
 public class CalculatorSeparator extends CalculatorCharacter implements Serializable {
     private static final long serialVersionUID = 6529681093967050660L;
+    private static final CalculatorSeparator[] INSTANCES = new CalculatorSeparator[CalculatorSeparatorEnum.values().length];
     private CalculatorSeparatorEnum separator;
 
+    static {
+        for (CalculatorSeparatorEnum separator : CalculatorSeparatorEnum.values()) {
+            INSTANCES[separator.ordinal()] = new CalculatorSeparator(separator);
+        }
+    }
+
     /**
      * Constructor for setting Separator up
      *
@@ -46,6 +54,16 @@ public class CalculatorSeparator extends CalculatorCharacter implements Serializ
         this.separator = separator;
     }
 
+    /**
+     * Returns the shared (flyweight) instance of the separator
+     *
+     * @param separator supported separator
+     * @return shared CalculatorSeparator
+     */
+    public static CalculatorSeparator valueOf(CalculatorSeparatorEnum separator) {
+        return INSTANCES[separator.ordinal()];
+    }
+
     /**
      * Getter of separator
      *
@@ -73,4 +91,26 @@ public class CalculatorSeparator extends CalculatorCharacter implements Serializ
         }
         return separator.toString();
     }
+
+    /**
+     * Two CalculatorSeparators are equal if their separator is equal
+     *
+     * @param o other object
+     * @return true if o is a CalculatorSeparator with the same separator
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return Objects.equals(separator, ((CalculatorSeparator) o).separator);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(separator);
+    }
 }
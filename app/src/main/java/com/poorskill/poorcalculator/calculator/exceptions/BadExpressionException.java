@@ -26,11 +26,15 @@ package com.poorskill.poorcalculator.calculator.exceptions;
  * Exception to catch bad expressions while using the calculator
  */
 public class BadExpressionException extends CalculatorException {
+    //Index of the offending CalculatorCharacter, -1 if unknown
+    private final int position;
+
     /**
      * Constructor without and params
      */
     public BadExpressionException() {
         super();
+        this.position = -1;
     }
 
     /**
@@ -40,6 +44,18 @@ public class BadExpressionException extends CalculatorException {
      */
     public BadExpressionException(String errorMessage) {
         super(errorMessage);
+        this.position = -1;
+    }
+
+    /**
+     * Constructor with String errorMessage and the position of the offending character
+     *
+     * @param errorMessage error message
+     * @param position     index of the offending CalculatorCharacter in the formula
+     */
+    public BadExpressionException(String errorMessage, int position) {
+        super(errorMessage);
+        this.position = position;
     }
 
     /**
@@ -50,5 +66,15 @@ public class BadExpressionException extends CalculatorException {
      */
     public BadExpressionException(String errorMessage, Throwable err) {
         super(errorMessage, err);
+        this.position = -1;
+    }
+
+    /**
+     * Returns the index of the offending CalculatorCharacter
+     *
+     * @return position in the formula, -1 if unknown
+     */
+    public int getPosition() {
+        return this.position;
     }
 }
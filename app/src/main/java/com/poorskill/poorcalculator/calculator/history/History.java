@@ -24,81 +24,541 @@ package com.poorskill.poorcalculator.calculator.history;
 
 import android.content.Context;
 
+import java.io.EOFException;
+import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-
-import static android.content.Context.MODE_PRIVATE;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class for loading and saving calculations
  * <p>
- * Calculations are getting converted into HistoryCalculations and serialized as ArrayList and saved on the Android phone
+ * Calculations are getting converted into HistoryCalculations and appended to rolling segments (SegmentedHistoryLog) which are saved on the Android phone.
+ * The old history.ser (one serialized ArrayList) is migrated into the segments once and deleted afterwards.
+ * <p>
+ * The segments are opened once by a background writer thread. read(), size(), get() and openCursor() wait for the loading,
+ * the UI thread asks isLoaded() or gets called back by whenLoaded() instead of waiting for the files. Written calculations are read by position out of the memory mapped segments,
+ * so get(i) costs the same for any size of the history. Reads take a snapshot of the segments under the lock of the history
+ * and decode outside of it, so they never wait for the writer. Added calculations are kept in memory and written behind by the writer thread,
+ * a burst of calculations is written with one append and synced with one fsync. flush() writes them right away (eg. in onPause/onStop).
+ * <p>
+ * After writing, the writer compacts the segments when they are over a limit of the RetentionPolicy, so the history doesn't grow without limit.
+ * <p>
+ * A HistoryCursor pages through the history newest first and decodes only the pages which are shown.
+ * <p>
+ * The find methods are answered by a HistoryIndex, which the writer builds on the first search (so starting the application doesn't decode
+ * the whole history) and which is updated with every added calculation afterwards.
  */
 public class History {
-    private final String FILE_NAME = "history.ser";
-    private Context context;
+    private static final String LEGACY_FILE_NAME = "history.ser";
+    //Exists while the old history file is appended to the segments
+    private static final String MIGRATION_MARKER_NAME = "history.ser.migrating";
+    //Appended to an old history file which can't be read
+    private static final String UNREADABLE_SUFFIX = ".unreadable";
+    private static final String SEGMENT_DIRECTORY_NAME = "history";
+    //Time the writer waits for more calculations before appending them
+    private static final long WRITE_DELAY_MS = 1000;
+    //One writer thread for all History objects, so a new History (eg. after the activity got recreated) loads after the pending writes of the old one
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "history-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //History of the application, shared by the activities
+    private static History instance;
+
+    private final SegmentedHistoryLog log;
+    //Calculations which are not written yet, guarded by this
+    private final List<HistoryCalculation> pending = new ArrayList<>();
+    //Calculations in the log, the pending ones follow after them, guarded by this
+    private SegmentedHistoryLog.Snapshot written = SegmentedHistoryLog.Snapshot.EMPTY;
+    //Calculations dropped by the compaction since opening, id of a calculation = dropped + position, guarded by this
+    private long dropped;
+    private boolean writeScheduled;
+    //Null until it is built, guarded by this
+    private HistoryIndex index;
+    //False until the writer opened and migrated the segments, guarded by this
+    private boolean loaded;
+    //Callbacks of whenLoaded() which wait for the loading, guarded by this
+    private final List<Runnable> loadedCallbacks = new ArrayList<>();
+    //Building of the index, null until the first search, guarded by this
+    private Future<?> indexing;
 
     /**
-     * Constructor for setting up History-Class
+     * Constructor for setting up History-Class with the default RetentionPolicy
      *
      * @param context context of the application
      */
     public History(Context context) {
-        this.context = context;
+        this(context, RetentionPolicy.DEFAULT);
     }
 
     /**
-     * Tries to read the File and deserialize it as ArrayList and returns it
+     * Constructor for setting up History-Class, opens, migrates and compacts the history in the background
      *
-     * @return result of reading as ArrayList<HistoryCalculation>
+     * @param context         context of the application
+     * @param retentionPolicy limits of the history
      */
-    public List<HistoryCalculation> read() {
-        ArrayList<HistoryCalculation> result = new ArrayList<>();
+    public History(Context context, RetentionPolicy retentionPolicy) {
+        File directory = context.getFilesDir();
+        this.log = new SegmentedHistoryLog(new File(directory, SEGMENT_DIRECTORY_NAME), new HistoryCodec(HistoryCodec.NO_PRECISION_CAP), retentionPolicy);
+        WRITER.execute(() -> {
+            try {
+                load(directory);
+            } finally {
+                setLoaded();
+            }
+            compact();
+        });
+    }
+
+    /**
+     * Opens and migrates the segments, only called by the writer thread
+     *
+     * @param directory directory of the history files
+     */
+    private void load(File directory) {
         try {
-            FileInputStream fileInputStream = context.openFileInput(FILE_NAME);
-            ObjectInputStream in = new ObjectInputStream(fileInputStream);
-            result = new ArrayList<>((ArrayList<HistoryCalculation>) in.readObject());
-            in.close();
-            fileInputStream.close();
-        } catch (ClassNotFoundException | IOException e) {
+            log.open();
+        } catch (IOException e) {
             e.printStackTrace();
+            return;
+        }
+        migrate(new File(directory, LEGACY_FILE_NAME), new File(directory, MIGRATION_MARKER_NAME));
+        synchronized (this) {
+            //Calculations added while opening are newer than the written ones
+            written = log.snapshot();
+        }
+    }
+
+    /**
+     * Marks the history as loaded (also if opening failed, it starts empty then) and runs the waiting callbacks
+     */
+    private void setLoaded() {
+        List<Runnable> callbacks;
+        synchronized (this) {
+            loaded = true;
+            notifyAll();
+            callbacks = new ArrayList<>(loadedCallbacks);
+            loadedCallbacks.clear();
         }
+        callbacks.forEach(Runnable::run);
+    }
+
+    /**
+     * Checks if the history is loaded, so read(), size(), get() and openCursor() don't wait for the files
+     *
+     * @return true if the writer opened the history
+     */
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Runs the callback once the history is loaded, for callers which must not wait (eg. the UI thread)
+     * The callback runs right away if the history is loaded already, otherwise on the writer thread
+     *
+     * @param callback called when the history is loaded
+     */
+    public void whenLoaded(Runnable callback) {
+        synchronized (this) {
+            if (!loaded) {
+                loadedCallbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * Returns the history of the application, all activities share it so only one History works on the files
+     *
+     * @param context context of the application
+     * @return shared History with the default RetentionPolicy
+     */
+    public static synchronized History getInstance(Context context) {
+        if (instance == null) {
+            instance = new History(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Returns all calculations, waits for the loading if it isn't finished yet (see isLoaded())
+     * Decodes the whole log, use size() and get() for single calculations
+     *
+     * @return unmodifiable copy of the history as List<HistoryCalculation>
+     */
+    public List<HistoryCalculation> read() {
+        awaitLoaded();
+        SegmentedHistoryLog.Snapshot segments;
+        List<HistoryCalculation> newest;
+        synchronized (this) {
+            segments = written;
+            newest = new ArrayList<>(pending);
+        }
+        List<HistoryCalculation> result = new ArrayList<>(segments.size() + newest.size());
+        for (HistoryCalculation hc : segments.read(0, segments.size())) {
+            if (hc != null) {
+                result.add(hc);
+            }
+        }
+        result.addAll(newest);
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Returns the amount of calculations
+     *
+     * @return size of the history
+     */
+    public int size() {
+        awaitLoaded();
+        synchronized (this) {
+            return written.size() + pending.size();
+        }
+    }
+
+    /**
+     * Returns the size of the written history and the work done by the compaction
+     *
+     * @return snapshot of the history files
+     */
+    public HistoryStats getStats() {
+        awaitLoaded();
+        return log.getStats();
+    }
+
+    /**
+     * Returns the calculation at the index (0 is the oldest), only this calculation gets read and decoded
+     *
+     * @param index position in the history
+     * @return HistoryCalculation at the index, null if it can't be read or the index is out of range
+     */
+    public HistoryCalculation get(int index) {
+        awaitLoaded();
+        SegmentedHistoryLog.Snapshot segments;
+        synchronized (this) {
+            segments = written;
+            if (index < 0 || index >= segments.size() + pending.size()) {
+                //Moved by a compaction since the caller asked for the size
+                return null;
+            }
+            if (index >= segments.size()) {
+                return pending.get(index - segments.size());
+            }
+        }
+        return segments.read(index);
+    }
+
+    /**
+     * Opens a cursor over the calculations which are in the history now, newest first
+     *
+     * @param pageSize amount of calculations which are decoded together
+     * @return HistoryCursor at the newest calculation
+     */
+    public HistoryCursor openCursor(int pageSize) {
+        awaitLoaded();
+        synchronized (this) {
+            int count = written.size() + pending.size();
+            return new HistoryCursor(this, dropped + count - 1, count, pageSize);
+        }
+    }
+
+    /**
+     * Reads the calculations with the ids from..to-1, ids stay the same when the compaction drops older calculations
+     *
+     * @param from first id (included)
+     * @param to   last id (excluded)
+     * @return calculations in order of adding, null for dropped or broken ones
+     */
+    List<HistoryCalculation> readIds(long from, long to) {
+        awaitLoaded();
+        SegmentedHistoryLog.Snapshot segments;
+        long droppedIds;
+        List<HistoryCalculation> newest;
+        synchronized (this) {
+            segments = written;
+            droppedIds = dropped;
+            int start = (int) Math.max(0, from - dropped - segments.size());
+            int end = (int) Math.min(pending.size(), Math.max(0, to - dropped - segments.size()));
+            newest = start < end ? new ArrayList<>(pending.subList(start, end)) : Collections.emptyList();
+        }
+        List<HistoryCalculation> result = new ArrayList<>((int) Math.max(0, to - from));
+        for (long id = from; id < Math.min(to, droppedIds); ++id) {
+            result.add(null);
+        }
+        int start = (int) Math.max(0, from - droppedIds);
+        int end = (int) Math.min(segments.size(), Math.max(0, to - droppedIds));
+        if (start < end) {
+            result.addAll(segments.read(start, end));
+        }
+        result.addAll(newest);
         return result;
     }
 
     /**
-     * Tries to write/serialize a list of HistoryCalculations into the file
+     * Finds the calculations with the result, 2.5 also finds 2.50
+     *
+     * @param result searched result
+     * @return positions for get(), newest first
+     */
+    public List<Integer> findByResult(BigDecimal result) {
+        return findByResultRange(result, result);
+    }
+
+    /**
+     * Finds the calculations whose result is between min and max (both included)
      *
-     * @param hcs List of HistoryCalculations
+     * @param min smallest result
+     * @param max biggest result
+     * @return positions for get(), newest first
      */
-    public void write(List<HistoryCalculation> hcs) {
-        if (hcs.isEmpty()) {
+    public List<Integer> findByResultRange(BigDecimal min, BigDecimal max) {
+        await(getIndexing());
+        synchronized (this) {
+            return index.findResult(min, max);
+        }
+    }
+
+    /**
+     * Finds the calculations which contain the number as operand
+     *
+     * @param operand searched number
+     * @return positions for get(), newest first
+     */
+    public List<Integer> findByOperand(BigDecimal operand) {
+        await(getIndexing());
+        synchronized (this) {
+            return index.findOperand(operand);
+        }
+    }
+
+    /**
+     * Finds the calculations whose formula (as shown on the display) contains the text
+     *
+     * @param text part of the formula
+     * @return positions for get(), newest first
+     */
+    public List<Integer> findByFormula(String text) {
+        await(getIndexing());
+        synchronized (this) {
+            return index.findFormula(text);
+        }
+    }
+
+    /**
+     * Adds the HistoryCalculation to the pending calculations, the writer appends it to the log in the background
+     *
+     * @param newHC new HistoryCalculation
+     */
+    public void addToHistory(HistoryCalculation newHC) {
+        synchronized (this) {
+            pending.add(newHC);
+            if (index != null) {
+                index.add(newHC);
+            }
+            if (writeScheduled) {
+                return;
+            }
+            writeScheduled = true;
+        }
+        WRITER.schedule(this::writePending, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds calculations and waits until the writer appended them, so a bulk load holds only one batch in memory
+     * Must not be called by the writer thread
+     *
+     * @param hcs calculations to add, oldest first
+     */
+    void addAllAndWrite(List<HistoryCalculation> hcs) {
+        synchronized (this) {
+            pending.addAll(hcs);
+            if (index != null) {
+                hcs.forEach(index::add);
+            }
+        }
+        await(WRITER.submit(this::writePending));
+    }
+
+    /**
+     * Lets the writer append the pending calculations right away, doesn't wait for the writing
+     */
+    public void flush() {
+        WRITER.execute(this::writePending);
+    }
+
+    /**
+     * Appends all pending calculations with one write, only called by the writer thread
+     * If writing fails, they stay pending and are written with the next calculation or flush
+     */
+    private void writePending() {
+        List<HistoryCalculation> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(pending);
+            writeScheduled = false;
+        }
+        if (batch.isEmpty()) {
             return;
         }
         try {
-            FileOutputStream fileOutputStream = context.openFileOutput(FILE_NAME, MODE_PRIVATE);
-            ObjectOutputStream out = new ObjectOutputStream(fileOutputStream);
-            out.writeObject(hcs);
-            out.close();
-            fileOutputStream.close();
+            log.appendAll(batch);
         } catch (IOException e) {
             e.printStackTrace();
+            return;
         }
+        synchronized (this) {
+            pending.subList(0, batch.size()).clear();
+            written = log.snapshot();
+        }
+        compact();
     }
 
     /**
-     * Loads/Deserializes the current HistoryCalculationsList, adds the param to the currently saved history calculation list and saves/serializes the list again
+     * Drops the calculations beyond the RetentionPolicy, only called by the writer thread
+     * The segments are compacted without the lock of the history, readers keep reading the snapshot from before.
+     * Positions of get() move with the compaction, so the compacted snapshot, the index and the dropped ids are swapped together under the lock.
+     */
+    private void compact() {
+        long now = System.currentTimeMillis();
+        if (!log.isCompactionDue(now)) {
+            return;
+        }
+        try {
+            log.compact(now);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        SegmentedHistoryLog.Snapshot compacted = log.snapshot();
+        synchronized (this) {
+            int removed = written.size() - compacted.size();
+            if (index != null) {
+                index.removeOldest(removed);
+            }
+            dropped += removed;
+            written = compacted;
+        }
+    }
+
+    /**
+     * Indexes the written calculations and afterwards the pending ones, only called by the writer thread
+     * Only the writer changes the written calculations, so they are read without holding the lock
+     */
+    private void buildIndex() {
+        HistoryIndex built = new HistoryIndex();
+        SegmentedHistoryLog.Snapshot segments;
+        synchronized (this) {
+            segments = written;
+        }
+        for (int from = 0; from < segments.size(); from += SegmentedHistoryLog.SEGMENT_ENTRIES) {
+            segments.read(from, Math.min(segments.size(), from + SegmentedHistoryLog.SEGMENT_ENTRIES)).forEach(built::add);
+        }
+        synchronized (this) {
+            pending.forEach(built::add);
+            index = built;
+        }
+    }
+
+    /**
+     * Waits until the writer loaded the history, see isLoaded() and whenLoaded() for callers which must not wait
+     */
+    private synchronized void awaitLoaded() {
+        while (!loaded) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the building of the index, the first call lets the writer build it
+     */
+    private synchronized Future<?> getIndexing() {
+        if (indexing == null) {
+            indexing = WRITER.submit(this::buildIndex);
+        }
+        return indexing;
+    }
+
+    private static void await(Future<?> task) {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Moves the calculations of the old history file into the segments and deletes the old file
+     * Only an empty history is migrated. The marker exists while the calculations are appended, so a migration which got
+     * interrupted is cleared and done again, while a history which already holds calculations (eg. the old file was migrated
+     * before and only deleting it failed) is never cleared.
+     * An old file which can't be read is never deleted but kept as history.ser.unreadable, so a later version can still read it.
      *
-     * @param newHC new HistoryCalculation
+     * @param legacyFile old history.ser
+     * @param marker     marker of a running migration
      */
-    public void addToHistory(HistoryCalculation newHC) {
-        ArrayList<HistoryCalculation> currentHCS = new ArrayList<>(read());
-        currentHCS.add(newHC);
-        write(currentHCS);
+    @SuppressWarnings("unchecked")
+    private void migrate(File legacyFile, File marker) {
+        if (!legacyFile.exists()) {
+            if (marker.exists() && !marker.delete()) {
+                marker.deleteOnExit();
+            }
+            return;
+        }
+        List<HistoryCalculation> hcs;
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(legacyFile))) {
+            hcs = (List<HistoryCalculation>) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException | ObjectStreamException | EOFException e) {
+            e.printStackTrace();
+            //Kept aside, if renaming fails it is tried again with the next start
+            if (!legacyFile.renameTo(new File(legacyFile.getPath() + UNREADABLE_SUFFIX))) {
+                return;
+            }
+            hcs = null;
+        } catch (IOException e) {
+            //Tried again with the next start
+            e.printStackTrace();
+            return;
+        }
+        boolean interrupted = marker.exists();
+        if (hcs != null && (interrupted || log.size() == 0)) {
+            try {
+                if (interrupted) {
+                    //Only a part of the old calculations was appended
+                    log.clear();
+                } else if (!marker.createNewFile()) {
+                    throw new IOException("Can't create " + marker);
+                }
+                log.appendAll(hcs);
+            } catch (IOException e) {
+                //Tried again with the next start
+                e.printStackTrace();
+                return;
+            }
+        }
+        if (marker.exists() && !marker.delete()) {
+            marker.deleteOnExit();
+        }
+        if (hcs != null && !legacyFile.delete()) {
+            legacyFile.deleteOnExit();
+        }
     }
 }
@@ -33,10 +33,24 @@ public class HistoryCalculation implements Serializable {
     private static final long serialVersionUID = 6599886092961057690L;
     private BigDecimal result;
     private List<CalculatorCharacter> calculatorCharacters;
+    //Time of the calculation in milliseconds, 0 for calculations saved before it was recorded
+    private long timestamp;
 
     public HistoryCalculation(List<CalculatorCharacter> ccs, BigDecimal result) {
+        this(ccs, result, System.currentTimeMillis());
+    }
+
+    /**
+     * Constructor for a calculation of a known time (eg. a loaded one)
+     *
+     * @param ccs       formula
+     * @param result    result of the formula
+     * @param timestamp time of the calculation in milliseconds
+     */
+    public HistoryCalculation(List<CalculatorCharacter> ccs, BigDecimal result, long timestamp) {
         this.calculatorCharacters = new ArrayList<>(ccs);
         this.result = result;
+        this.timestamp = timestamp;
     }
 
     public BigDecimal getResult() {
@@ -47,4 +61,8 @@ public class HistoryCalculation implements Serializable {
         return this.calculatorCharacters;
     }
 
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
 }
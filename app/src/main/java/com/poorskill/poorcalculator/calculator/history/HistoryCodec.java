@@ -0,0 +1,572 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator.history;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorConstant;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorNumber;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorOperation;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorSeparator;
+import com.poorskill.poorcalculator.calculator.characters.supported.CalculatorSeparatorEnum;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedConstant;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary format of a HistoryCalculation, replaces the Java serialization of the records
+ * <p>
+ * Content: varint amount of characters, every character as varint opcode (numbers followed by their value), then the result as value.
+ * A value is a tag (null, long or big) followed by the zigzag varint scale and the unscaled value
+ * as zigzag varint (long) or as varint length + two's-complement bytes (big).
+ * The opcodes are fixed for the format, so renaming or adding classes doesn't break saved records.
+ * <p>
+ * Record: version byte (VERSION), varint kind, varlong timestamp and then depending on the kind
+ * <ul>
+ * <li>FULL: the content</li>
+ * <li>REFERENCE: varint length of the FULL payload, varint distance back to a record with the same content</li>
+ * <li>DELTA: varint length of the FULL payload, varint distance back to the base record, varint amount of characters
+ * kept from the start and from the end of the base, the characters in between (amount + characters) and the result</li>
+ * </ul>
+ * References and deltas are resolved by the HistoryLog, which knows the records before.
+ */
+final class HistoryCodec {
+    static final int VERSION = 2;
+    //Kinds of the records
+    static final int FULL = 0, REFERENCE = 1, DELTA = 2;
+    //Results are saved as they are
+    static final int NO_PRECISION_CAP = 0;
+
+    //Opcodes of the characters, never change the existing ones
+    private static final int NUMBER = 0, ADD = 1, SUB = 2, MULTIPLY = 3, DIVIDE = 4, FACULTY = 5,
+            LEFT_BRACKET = 6, RIGHT_BRACKET = 7, DECIMAL_SEPARATOR = 8, PI = 9, E = 10;
+    //Tags of the values
+    private static final int NULL_VALUE = 0, LONG_VALUE = 1, BIG_VALUE = 2;
+
+    private final MathContext resultPrecision;
+
+    /**
+     * Constructor for setting up the codec
+     *
+     * @param resultPrecision highest amount of significant digits of saved results, NO_PRECISION_CAP to save them exactly
+     */
+    HistoryCodec(int resultPrecision) {
+        if (resultPrecision < 0) {
+            throw new IllegalArgumentException("resultPrecision must not be negative");
+        }
+        this.resultPrecision = resultPrecision == NO_PRECISION_CAP ? null : new MathContext(resultPrecision, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Resolves the records which references and deltas point to
+     */
+    interface Resolver {
+        /**
+         * Returns the calculation of a record before the decoded one
+         *
+         * @param distance distance back from the decoded record (1 is the one right before)
+         * @return decoded calculation
+         * @throws IOException if the record can't be read
+         */
+        HistoryCalculation resolve(int distance) throws IOException;
+    }
+
+    /**
+     * Encodes the content (characters and result) of the calculation, equal calculations have equal contents
+     *
+     * @param hc calculation
+     * @return content bytes
+     */
+    byte[] encodeContent(HistoryCalculation hc) {
+        List<CalculatorCharacter> ccs = hc.getCalculatorCharacters();
+        Output out = new Output(8 + 3 * ccs.size());
+        writeCharacters(out, ccs);
+        writeValue(out, capResult(hc.getResult()));
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes the calculation as FULL record
+     *
+     * @param hc calculation
+     * @return record payload
+     */
+    byte[] encode(HistoryCalculation hc) {
+        return encodeFull(hc.getTimestamp(), encodeContent(hc));
+    }
+
+    /**
+     * Encodes a FULL record of an already encoded content
+     *
+     * @param timestamp time of the calculation
+     * @param content   content of encodeContent()
+     * @return record payload
+     */
+    byte[] encodeFull(long timestamp, byte[] content) {
+        Output out = writeHeader(FULL, timestamp, content.length);
+        out.writeBytes(content);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes a record which has the same content as the record distance records before
+     *
+     * @param timestamp  time of the calculation
+     * @param distance   distance back to the record with the content
+     * @param fullLength length of the FULL payload
+     * @return record payload
+     */
+    byte[] encodeReference(long timestamp, int distance, int fullLength) {
+        Output out = writeHeader(REFERENCE, timestamp, 0);
+        out.writeVarint(fullLength);
+        out.writeVarint(distance);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes the calculation as difference to the base calculation distance records before
+     * Only the characters between the common start and the common end are saved
+     *
+     * @param hc         calculation
+     * @param base       calculation of the base record
+     * @param distance   distance back to the base record
+     * @param fullLength length of the FULL payload
+     * @return record payload
+     */
+    byte[] encodeDelta(HistoryCalculation hc, HistoryCalculation base, int distance, int fullLength) {
+        List<CalculatorCharacter> ccs = hc.getCalculatorCharacters();
+        List<CalculatorCharacter> baseCcs = base.getCalculatorCharacters();
+        int limit = Math.min(ccs.size(), baseCcs.size());
+        int prefix = 0;
+        while (prefix < limit && ccs.get(prefix).equals(baseCcs.get(prefix))) {
+            ++prefix;
+        }
+        int suffix = 0;
+        while (suffix < limit - prefix && ccs.get(ccs.size() - 1 - suffix).equals(baseCcs.get(baseCcs.size() - 1 - suffix))) {
+            ++suffix;
+        }
+        Output out = writeHeader(DELTA, hc.getTimestamp(), 8 + 3 * (ccs.size() - prefix - suffix));
+        out.writeVarint(fullLength);
+        out.writeVarint(distance);
+        out.writeVarint(prefix);
+        out.writeVarint(suffix);
+        writeCharacters(out, ccs.subList(prefix, ccs.size() - suffix));
+        writeValue(out, capResult(hc.getResult()));
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the kind of the record
+     *
+     * @param payload record payload
+     * @return FULL, REFERENCE or DELTA
+     * @throws IOException if the payload is broken or of an unknown version
+     */
+    int getKind(byte[] payload) throws IOException {
+        Input in = new Input(payload);
+        return readKind(in);
+    }
+
+    /**
+     * Returns the length the record would have as FULL record
+     *
+     * @param payload record payload
+     * @return length of the FULL payload
+     * @throws IOException if the payload is broken or of an unknown version
+     */
+    int getFullLength(byte[] payload) throws IOException {
+        Input in = new Input(payload);
+        if (readKind(in) == FULL) {
+            return payload.length;
+        }
+        in.readVarlong();
+        return in.readVarint();
+    }
+
+    /**
+     * Returns the distance back to the record which a REFERENCE or DELTA record points to
+     *
+     * @param payload record payload
+     * @return distance back, 0 for FULL records
+     * @throws IOException if the payload is broken or of an unknown version
+     */
+    int getDistance(byte[] payload) throws IOException {
+        Input in = new Input(payload);
+        if (readKind(in) == FULL) {
+            return 0;
+        }
+        in.readVarlong();
+        in.readVarint();
+        return readDistance(in);
+    }
+
+    /**
+     * Decodes a FULL record payload
+     *
+     * @param payload record payload
+     * @return decoded calculation
+     * @throws IOException if the payload is broken, of an unknown version or not FULL
+     */
+    HistoryCalculation decode(byte[] payload) throws IOException {
+        return decode(payload, distance -> {
+            throw new IOException("History record refers to another record");
+        });
+    }
+
+    /**
+     * Decodes a record payload
+     *
+     * @param payload  record payload
+     * @param resolver returns the records which references and deltas point to
+     * @return decoded calculation
+     * @throws IOException if the payload is broken or of an unknown version
+     */
+    HistoryCalculation decode(byte[] payload, Resolver resolver) throws IOException {
+        Input in = new Input(payload);
+        int kind = readKind(in);
+        long timestamp = in.readVarlong();
+        HistoryCalculation hc;
+        int fullLength = payload.length;
+        switch (kind) {
+            case FULL:
+                hc = new HistoryCalculation(readCharacters(in), readValue(in), timestamp);
+                break;
+            case REFERENCE: {
+                fullLength = in.readVarint();
+                HistoryCalculation same = resolver.resolve(readDistance(in));
+                hc = new HistoryCalculation(same.getCalculatorCharacters(), same.getResult(), timestamp);
+                break;
+            }
+            case DELTA: {
+                fullLength = in.readVarint();
+                List<CalculatorCharacter> baseCcs = resolver.resolve(readDistance(in)).getCalculatorCharacters();
+                int prefix = in.readVarint();
+                int suffix = in.readVarint();
+                if (prefix + suffix > baseCcs.size()) {
+                    throw new IOException("Broken history record");
+                }
+                List<CalculatorCharacter> ccs = new ArrayList<>(baseCcs.subList(0, prefix));
+                ccs.addAll(readCharacters(in));
+                ccs.addAll(baseCcs.subList(baseCcs.size() - suffix, baseCcs.size()));
+                hc = new HistoryCalculation(ccs, readValue(in), timestamp);
+                break;
+            }
+            default:
+                throw new IOException("Unknown history record kind " + kind);
+        }
+        if (!in.isFinished()) {
+            throw new IOException("Broken history record");
+        }
+        //A reference or delta resolved against the wrong base gives a calculation of another length
+        if (kind != FULL && getFullLength(hc) != fullLength) {
+            throw new IOException("History record doesn't match its base");
+        }
+        return hc;
+    }
+
+    /**
+     * Returns the length of the FULL payload of a decoded calculation, its result was already capped when it was encoded
+     */
+    private static int getFullLength(HistoryCalculation hc) {
+        List<CalculatorCharacter> ccs = hc.getCalculatorCharacters();
+        Output out = writeHeader(FULL, hc.getTimestamp(), 8 + 3 * ccs.size());
+        writeCharacters(out, ccs);
+        writeValue(out, hc.getResult());
+        return out.size;
+    }
+
+    /**
+     * Reads the version and the kind
+     */
+    private static int readKind(Input in) throws IOException {
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unknown history record version " + version);
+        }
+        return in.readVarint();
+    }
+
+    private static int readDistance(Input in) throws IOException {
+        int distance = in.readVarint();
+        if (distance < 1) {
+            throw new IOException("Broken history record");
+        }
+        return distance;
+    }
+
+    private static Output writeHeader(int kind, long timestamp, int capacity) {
+        Output out = new Output(12 + capacity);
+        out.writeByte(VERSION);
+        out.writeVarint(kind);
+        out.writeVarlong(timestamp);
+        return out;
+    }
+
+    private BigDecimal capResult(BigDecimal result) {
+        if (result != null && resultPrecision != null && result.precision() > resultPrecision.getPrecision()) {
+            return result.round(resultPrecision);
+        }
+        return result;
+    }
+
+    private static void writeCharacters(Output out, List<CalculatorCharacter> ccs) {
+        out.writeVarint(ccs.size());
+        for (CalculatorCharacter cc : ccs) {
+            int opcode = getOpcode(cc);
+            out.writeVarint(opcode);
+            if (opcode == NUMBER) {
+                writeValue(out, ((CalculatorNumber) cc).getValue());
+            }
+        }
+    }
+
+    private static List<CalculatorCharacter> readCharacters(Input in) throws IOException {
+        int size = in.readVarint();
+        if (size < 0 || size > in.bytes.length) {
+            throw new IOException("Broken history record");
+        }
+        List<CalculatorCharacter> ccs = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            ccs.add(readCharacter(in));
+        }
+        return ccs;
+    }
+
+    private static int getOpcode(CalculatorCharacter cc) {
+        if (cc instanceof CalculatorNumber) {
+            return NUMBER;
+        } else if (cc instanceof CalculatorOperation) {
+            switch (((CalculatorOperation) cc).getOperation()) {
+                case Add:
+                    return ADD;
+                case Sub:
+                    return SUB;
+                case Multiply:
+                    return MULTIPLY;
+                case Divide:
+                    return DIVIDE;
+                case Faculty:
+                    return FACULTY;
+            }
+        } else if (cc instanceof CalculatorSeparator) {
+            switch (((CalculatorSeparator) cc).getSeparator()) {
+                case LeftBracket:
+                    return LEFT_BRACKET;
+                case RightBracket:
+                    return RIGHT_BRACKET;
+                case DecimalSeparator:
+                    return DECIMAL_SEPARATOR;
+            }
+        } else if (cc instanceof CalculatorConstant) {
+            switch (((CalculatorConstant) cc).getConstant()) {
+                case Pi:
+                    return PI;
+                case E:
+                    return E;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported CalculatorCharacter " + cc);
+    }
+
+    private static CalculatorCharacter readCharacter(Input in) throws IOException {
+        int opcode = in.readVarint();
+        switch (opcode) {
+            case NUMBER:
+                return new CalculatorNumber(readValue(in));
+            case ADD:
+                return CalculatorOperation.valueOf(SupportedOperations.Add);
+            case SUB:
+                return CalculatorOperation.valueOf(SupportedOperations.Sub);
+            case MULTIPLY:
+                return CalculatorOperation.valueOf(SupportedOperations.Multiply);
+            case DIVIDE:
+                return CalculatorOperation.valueOf(SupportedOperations.Divide);
+            case FACULTY:
+                return CalculatorOperation.valueOf(SupportedOperations.Faculty);
+            case LEFT_BRACKET:
+                return CalculatorSeparator.valueOf(CalculatorSeparatorEnum.LeftBracket);
+            case RIGHT_BRACKET:
+                return CalculatorSeparator.valueOf(CalculatorSeparatorEnum.RightBracket);
+            case DECIMAL_SEPARATOR:
+                return CalculatorSeparator.valueOf(CalculatorSeparatorEnum.DecimalSeparator);
+            case PI:
+                return CalculatorConstant.valueOf(SupportedConstant.Pi);
+            case E:
+                return CalculatorConstant.valueOf(SupportedConstant.E);
+        }
+        throw new IOException("Unknown history opcode " + opcode);
+    }
+
+    private static void writeValue(Output out, BigDecimal value) {
+        if (value == null) {
+            out.writeVarint(NULL_VALUE);
+            return;
+        }
+        BigInteger unscaled = value.unscaledValue();
+        boolean isLong = unscaled.bitLength() < Long.SIZE;
+        out.writeVarint(isLong ? LONG_VALUE : BIG_VALUE);
+        out.writeVarlong(zigzag(value.scale()));
+        if (isLong) {
+            out.writeVarlong(zigzag(unscaled.longValue()));
+        } else {
+            byte[] bytes = unscaled.toByteArray();
+            out.writeVarint(bytes.length);
+            out.writeBytes(bytes);
+        }
+    }
+
+    private static BigDecimal readValue(Input in) throws IOException {
+        int tag = in.readVarint();
+        if (tag == NULL_VALUE) {
+            return null;
+        }
+        long scale = unzigzag(in.readVarlong());
+        if (scale != (int) scale) {
+            throw new IOException("Broken history value");
+        }
+        switch (tag) {
+            case LONG_VALUE:
+                return BigDecimal.valueOf(unzigzag(in.readVarlong()), (int) scale);
+            case BIG_VALUE:
+                int length = in.readVarint();
+                if (length == 0) {
+                    throw new IOException("Broken history value");
+                }
+                return new BigDecimal(new BigInteger(in.readBytes(length)), (int) scale);
+        }
+        throw new IOException("Unknown history value tag " + tag);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Growable byte array with varint writing
+     */
+    private static final class Output {
+        private byte[] bytes;
+        private int size;
+
+        private Output(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        private void ensure(int additional) {
+            if (size + additional > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+            }
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        private void writeVarint(int value) {
+            writeVarlong(value & 0xFFFFFFFFL);
+        }
+
+        private void writeVarlong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void writeBytes(byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += value.length;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    /**
+     * Reader of a payload with bounds checks, broken payloads throw an IOException
+     */
+    private static final class Input {
+        private final byte[] bytes;
+        private int position;
+
+        private Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private int readByte() throws IOException {
+            if (position >= bytes.length) {
+                throw new IOException("Broken history record");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        private int readVarint() throws IOException {
+            long value = readVarlong();
+            if (value > Integer.MAX_VALUE) {
+                throw new IOException("Broken history record");
+            }
+            return (int) value;
+        }
+
+        private long readVarlong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Broken history record");
+        }
+
+        private byte[] readBytes(int length) throws IOException {
+            if (length < 0 || length > bytes.length - position) {
+                throw new IOException("Broken history record");
+            }
+            byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return value;
+        }
+
+        private boolean isFinished() {
+            return position == bytes.length;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator.history;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Cursor over the history, newest first, for lists which show a part of a big history
+ * <p>
+ * The cursor covers the calculations which were in the history when it was opened. Rows are read in pages,
+ * a page is decoded when one of its rows is needed and only the last few pages stay in memory,
+ * so the memory doesn't depend on the size of the history.
+ * Calculations which got dropped by the compaction in the meantime are null.
+ * <p>
+ * Not thread-safe, meant for the UI thread.
+ */
+public final class HistoryCursor {
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    //Decoded pages, enough for the visible rows while scrolling in both directions
+    private static final int CACHED_PAGES = 4;
+
+    private final History history;
+    private final long newestId;
+    private final int count;
+    private final int pageSize;
+    private final Map<Integer, List<HistoryCalculation>> pages = new LinkedHashMap<Integer, List<HistoryCalculation>>(CACHED_PAGES * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<HistoryCalculation>> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+    private int nextPage;
+
+    /**
+     * Constructor for setting up the cursor, opened with History.openCursor()
+     *
+     * @param history  history of the calculations
+     * @param newestId id of the newest calculation
+     * @param count    amount of calculations
+     * @param pageSize amount of calculations which are decoded together
+     */
+    HistoryCursor(History history, long newestId, int count, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        this.history = history;
+        this.newestId = newestId;
+        this.count = count;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Returns the amount of rows
+     *
+     * @return calculations in the history when the cursor was opened
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    public int getPageSize() {
+        return this.pageSize;
+    }
+
+    /**
+     * Returns the calculation of the row, decodes its page if needed
+     *
+     * @param row row of the calculation (0 is the newest)
+     * @return HistoryCalculation of the row, null if it got dropped or can't be read
+     */
+    public HistoryCalculation get(int row) {
+        if (row < 0 || row >= count) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Count: " + count);
+        }
+        return getPage(row / pageSize).get(row % pageSize);
+    }
+
+    /**
+     * Returns the calculations of a page, newest first
+     *
+     * @param page page number (0 has the newest calculations)
+     * @return unmodifiable list of at most pageSize calculations
+     */
+    public List<HistoryCalculation> getPage(int page) {
+        List<HistoryCalculation> calculations = pages.get(page);
+        if (calculations == null) {
+            int first = page * pageSize;
+            int last = Math.min(count, first + pageSize) - 1;
+            if (first < 0 || first > last) {
+                throw new IndexOutOfBoundsException("Page: " + page + ", Count: " + count);
+            }
+            calculations = new ArrayList<>(history.readIds(newestId - last, newestId - first + 1));
+            Collections.reverse(calculations);
+            calculations = Collections.unmodifiableList(calculations);
+            pages.put(page, calculations);
+        }
+        return calculations;
+    }
+
+    /**
+     * Checks if next() has another page
+     *
+     * @return true if there are older calculations
+     */
+    public boolean hasNext() {
+        return nextPage * pageSize < count;
+    }
+
+    /**
+     * Returns the next page, the first call returns the newest calculations
+     *
+     * @return next page of calculations, newest first
+     */
+    public List<HistoryCalculation> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return getPage(nextPage++);
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator.history;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorNumber;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.poorskill.poorcalculator.calculator.utility.CalculatorConverter.convertCalculatorCharsToString;
+
+/**
+ * In-memory search index of the history, updated with every added calculation
+ * <p>
+ * Every calculation gets an id in order of adding, its position in the history is the id minus the id of the oldest calculation.
+ * Results are kept sorted (exact and range queries), operands are hashed and the formulas (as shown on the display)
+ * have an inverted index of their trigrams. A formula query only checks the calculations which contain its rarest trigram.
+ * <p>
+ * Not thread-safe, History guards it with its own lock.
+ */
+final class HistoryIndex {
+    private static final int GRAM_LENGTH = 3;
+
+    //Id of the oldest calculation, ids below are dropped
+    private int firstId;
+    //Formulas by id - firstId, null for calculations which couldn't be read
+    private final List<String> formulas = new ArrayList<>();
+    private final TreeMap<BigDecimal, Postings> results = new TreeMap<>();
+    //Operands without trailing zeros, so 2.50 finds 2.5
+    private final Map<BigDecimal, Postings> operands = new HashMap<>();
+    private final Map<Long, Postings> grams = new HashMap<>();
+
+    /**
+     * Adds the newest calculation
+     *
+     * @param hc added calculation, null keeps the position of a calculation which couldn't be read
+     */
+    void add(HistoryCalculation hc) {
+        int id = firstId + formulas.size();
+        if (hc == null) {
+            formulas.add(null);
+            return;
+        }
+        String formula = convertCalculatorCharsToString(hc.getCalculatorCharacters());
+        formulas.add(formula);
+        if (hc.getResult() != null) {
+            getPostings(results, hc.getResult()).add(id);
+        }
+        for (CalculatorCharacter cc : hc.getCalculatorCharacters()) {
+            if (cc instanceof CalculatorNumber) {
+                getPostings(operands, ((CalculatorNumber) cc).getValue().stripTrailingZeros()).add(id);
+            }
+        }
+        for (int i = 0; i + GRAM_LENGTH <= formula.length(); ++i) {
+            getPostings(grams, getGram(formula, i)).add(id);
+        }
+    }
+
+    /**
+     * Drops the oldest calculations (eg. after a compaction of the history)
+     *
+     * @param amount amount of dropped calculations
+     */
+    void removeOldest(int amount) {
+        if (amount <= 0) {
+            return;
+        }
+        amount = Math.min(amount, formulas.size());
+        formulas.subList(0, amount).clear();
+        firstId += amount;
+        removeBelow(results, firstId);
+        removeBelow(operands, firstId);
+        removeBelow(grams, firstId);
+    }
+
+    /**
+     * Returns the amount of indexed calculations
+     *
+     * @return size of the index
+     */
+    int size() {
+        return formulas.size();
+    }
+
+    /**
+     * Finds the calculations whose result is between min and max (both included)
+     *
+     * @param min smallest result
+     * @param max biggest result
+     * @return positions in the history, newest first
+     */
+    List<Integer> findResult(BigDecimal min, BigDecimal max) {
+        if (min.compareTo(max) > 0) {
+            return new ArrayList<>();
+        }
+        Postings found = new Postings();
+        for (Postings postings : results.subMap(min, true, max, true).values()) {
+            found.addAll(postings);
+        }
+        Arrays.sort(found.ids, 0, found.size);
+        return toPositions(found);
+    }
+
+    /**
+     * Finds the calculations which contain the operand
+     *
+     * @param value operand value
+     * @return positions in the history, newest first
+     */
+    List<Integer> findOperand(BigDecimal value) {
+        return toPositions(operands.get(value.stripTrailingZeros()));
+    }
+
+    /**
+     * Finds the calculations whose formula contains the text
+     *
+     * @param text part of the formula as shown on the display
+     * @return positions in the history, newest first
+     */
+    List<Integer> findFormula(String text) {
+        List<Integer> positions = new ArrayList<>();
+        if (text.length() < GRAM_LENGTH) {
+            //Too short for a trigram, the formulas are checked directly
+            for (int i = formulas.size() - 1; i >= 0; --i) {
+                String formula = formulas.get(i);
+                if (formula != null && formula.contains(text)) {
+                    positions.add(i);
+                }
+            }
+            return positions;
+        }
+        Postings rarest = null;
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); ++i) {
+            Postings postings = grams.get(getGram(text, i));
+            if (postings == null) {
+                return positions;
+            }
+            if (rarest == null || postings.size < rarest.size) {
+                rarest = postings;
+            }
+        }
+        for (int i = rarest.size - 1; i >= 0; --i) {
+            int position = rarest.ids[i] - firstId;
+            if (formulas.get(position).contains(text)) {
+                positions.add(position);
+            }
+        }
+        return positions;
+    }
+
+    private List<Integer> toPositions(Postings postings) {
+        List<Integer> positions = new ArrayList<>(postings == null ? 0 : postings.size);
+        if (postings != null) {
+            for (int i = postings.size - 1; i >= 0; --i) {
+                positions.add(postings.ids[i] - firstId);
+            }
+        }
+        return positions;
+    }
+
+    private static long getGram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    private static <K> Postings getPostings(Map<K, Postings> map, K key) {
+        Postings postings = map.get(key);
+        if (postings == null) {
+            postings = new Postings();
+            map.put(key, postings);
+        }
+        return postings;
+    }
+
+    private static <K> void removeBelow(Map<K, Postings> map, int id) {
+        map.values().removeIf(postings -> postings.removeBelow(id));
+    }
+
+    /**
+     * Ascending ids of the calculations with one key
+     */
+    private static final class Postings {
+        private int[] ids = new int[2];
+        private int size;
+
+        /**
+         * Adds an id, which is not smaller than the last one
+         * A calculation which contains a key twice is added once
+         */
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        void addAll(Postings other) {
+            if (size + other.size > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(size + other.size, size * 2));
+            }
+            System.arraycopy(other.ids, 0, ids, size, other.size);
+            size += other.size;
+        }
+
+        /**
+         * Removes the ids below id
+         *
+         * @return true if no id is left
+         */
+        boolean removeBelow(int id) {
+            int from = Arrays.binarySearch(ids, 0, size, id);
+            if (from < 0) {
+                from = -from - 1;
+            }
+            System.arraycopy(ids, from, ids, 0, size - from);
+            size -= from;
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,695 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator.history;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of HistoryCalculations with an offset index for random access
+ * <p>
+ * The log starts with a header (magic int) followed by the records. Every record is the length of the payload (int),
+ * the CRC32 of the payload (int) and the payload (the HistoryCalculation encoded by the HistoryCodec).
+ * Adding a calculation only appends its record instead of writing the whole history again.
+ * The index file holds the offset (long) of every record, so record i is read out of the memory mapped files
+ * without touching any other record. Readers get an immutable Snapshot of the mappings, so they don't wait for a write or its fsync.
+ * <p>
+ * A batch of records is appended with one write and made durable with one fsync of the log (group commit).
+ * The index is not synced, open() checks it against the log and writes the wrong or missing entries again.
+ * A record which was cut off or whose checksum is wrong at the end of the log (torn tail) is truncated,
+ * a record with a wrong checksum in between is skipped when it is read, so is an empty placeholder record. If the length of a record in between is broken,
+ * open() finds the next intact record through the old index and keeps a placeholder entry (the complement of the offset)
+ * for every record in between, so the positions of the later records and the distances of their references and deltas stay the same.
+ * <p>
+ * Appended calculations are deduplicated by their content: a calculation which is already in the last REFERENCE_WINDOW records
+ * is saved as reference to the record with its content (the reference count of a content is the amount of references to it, every reference keeps
+ * its own timestamp). Otherwise it is saved as delta to the calculation before, if that is smaller than the full record.
+ * References and deltas never point into another log and reading a record resolves at most MAX_DEPTH records before it.
+ */
+final class HistoryLog implements Closeable {
+    private static final int LENGTH_BYTES = 4;
+    private static final int CHECKSUM_BYTES = 4;
+    private static final int OFFSET_BYTES = 8;
+    private static final int FRAME_BYTES = LENGTH_BYTES + CHECKSUM_BYTES;
+    //Header of every log
+    private static final int MAGIC = 0xFF484C02;
+    private static final int HEADER_BYTES = 4;
+    //Longest chain of references and deltas, a longer one gets a FULL record
+    private static final int MAX_DEPTH = 8;
+    //Farthest distance of a reference, so the first append after open() only reads the records of this window
+    private static final int REFERENCE_WINDOW = 256;
+    //Payload of a broken record which got copied, read as null like the broken record
+    private static final byte[] PLACEHOLDER = new byte[0];
+    private final File file;
+    private final File indexFile;
+    private final HistoryCodec codec;
+    private RandomAccessFile log, index;
+    //Amount of records and bytes of the log which are complete and indexed
+    private int count;
+    private long length;
+    //Read-only mappings, mapped again when the files grew
+    private MappedByteBuffer logMap, indexMap;
+    //Position of the first record of every content and the chain depth of every record, built on the first append
+    private Map<ByteBuffer, Integer> contents;
+    private int[] depths;
+    private HistoryCalculation newest;
+    //Records which readers see, null until the next call of snapshot()
+    private Snapshot snapshot;
+    //Bytes saved by references and deltas, -1 until they are counted
+    private long savedBytes = -1;
+
+    /**
+     * Constructor for setting up the log, the files are opened with open()
+     *
+     * @param file      log file
+     * @param indexFile index file of the log
+     * @param codec     codec of the record payloads
+     */
+    HistoryLog(File file, File indexFile, HistoryCodec codec) {
+        this.file = file;
+        this.indexFile = indexFile;
+        this.codec = codec;
+    }
+
+    /**
+     * Opens (or creates) the files and repairs them after a crash
+     *
+     * @throws IOException if the files can't be opened
+     */
+    synchronized void open() throws IOException {
+        if (log != null) {
+            return;
+        }
+        log = new RandomAccessFile(file, "rw");
+        index = new RandomAccessFile(indexFile, "rw");
+        long logLength = log.length();
+        if (logLength < HEADER_BYTES) {
+            //New log (or one too short for a record)
+            log.setLength(0);
+            writeHeader();
+            logLength = HEADER_BYTES;
+        }
+        log.seek(0);
+        if (log.readInt() != MAGIC) {
+            close();
+            throw new IOException("Unknown history log: " + file);
+        }
+        if (logLength > Integer.MAX_VALUE) {
+            throw new IOException("History log is too big: " + file);
+        }
+        //The records follow each other, so the log alone gives the offsets, up to a torn tail
+        ByteBuffer records = log.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, logLength);
+        ByteBuffer entries = index.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, index.length() / OFFSET_BYTES * OFFSET_BYTES);
+        List<Long> offsets = new ArrayList<>();
+        long offset = HEADER_BYTES;
+        while (offset < logLength) {
+            long end = getRecordEnd(records, offset, false);
+            if (end < 0) {
+                //A broken length in the middle, the old index may still point to the records behind it
+                int intact = findIntactRecord(records, entries, offset, offsets.size());
+                if (intact < 0) {
+                    break;
+                }
+                while (offsets.size() < intact) {
+                    offsets.add(~offset);
+                }
+                offset = entries.getLong(intact * OFFSET_BYTES);
+                continue;
+            }
+            offsets.add(offset);
+            offset = end;
+        }
+        if (offset < logLength) {
+            log.setLength(offset);
+        }
+        //Index entries which match the log are kept, the rest is written again
+        int indexed = Math.min(offsets.size(), entries.capacity() / OFFSET_BYTES);
+        count = 0;
+        while (count < indexed && entries.getLong(count * OFFSET_BYTES) == offsets.get(count)) {
+            ++count;
+        }
+        index.setLength((long) count * OFFSET_BYTES);
+        if (count < offsets.size()) {
+            writeOffsets(offsets.subList(count, offsets.size()));
+        }
+        length = offset;
+        logMap = indexMap = null;
+        snapshot = null;
+        resetContents();
+        savedBytes = -1;
+    }
+
+    /**
+     * Returns the amount of records
+     *
+     * @return size of the log
+     */
+    synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Returns the complete records of the log, the snapshot is read without the lock of the log
+     * A new snapshot is only created after records were added
+     *
+     * @return snapshot of the records
+     * @throws IOException if the files can't be mapped
+     */
+    synchronized Snapshot snapshot() throws IOException {
+        if (snapshot == null || snapshot.count != count) {
+            checkOpen();
+            map();
+            snapshot = new Snapshot(logMap, indexMap, count, codec);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reads record i, only the index entry and the record itself are touched
+     *
+     * @param i position of the record (0 is the oldest)
+     * @return decoded calculation, null if the record can't be decoded
+     * @throws IOException if the files can't be mapped
+     */
+    HistoryCalculation read(int i) throws IOException {
+        return snapshot().read(i);
+    }
+
+    /**
+     * Reads the payload of record i without decoding it
+     *
+     * @param i position of the record (0 is the oldest)
+     * @return payload of the record, null if its checksum is wrong or open() skipped it
+     * @throws IOException if the files can't be mapped
+     */
+    byte[] readPayload(int i) throws IOException {
+        return snapshot().readPayload(i);
+    }
+
+    /**
+     * Reads the records from..to-1, references and deltas to records in the range are resolved without reading them again
+     *
+     * @param from first position (included)
+     * @param to   last position (excluded)
+     * @return decoded calculations in order of adding, null for broken records
+     * @throws IOException if the files can't be mapped
+     */
+    List<HistoryCalculation> read(int from, int to) throws IOException {
+        return snapshot().read(from, to);
+    }
+
+    /**
+     * Returns the bytes of both files which hold complete records
+     *
+     * @return size of the log and index in bytes
+     */
+    synchronized long getBytes() {
+        return length + (long) count * OFFSET_BYTES;
+    }
+
+    /**
+     * Returns the bytes saved by references and deltas compared to FULL records, counted once on the first call
+     *
+     * @return saved bytes
+     * @throws IOException if the files can't be mapped
+     */
+    synchronized long getSavedBytes() throws IOException {
+        if (savedBytes < 0) {
+            long saved = 0;
+            for (int i = 0; i < count; ++i) {
+                byte[] payload = readPayload(i);
+                if (payload != null && payload.length > 0) {
+                    try {
+                        saved += codec.getFullLength(payload) - payload.length;
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            savedBytes = saved;
+        }
+        return savedBytes;
+    }
+
+    /**
+     * Returns the bytes of both files which hold the records i..size()-1
+     *
+     * @param i position of the first record
+     * @return size of the records and their index entries in bytes
+     * @throws IOException if the index can't be read
+     */
+    synchronized long getBytesFrom(int i) throws IOException {
+        if (i >= count) {
+            return 0;
+        }
+        long offset = readOffset(i);
+        return length - (offset < 0 ? ~offset : offset) + (long) (count - i) * OFFSET_BYTES;
+    }
+
+    /**
+     * Appends the records of the HistoryCalculations with one write to the log and one to the index
+     * If writing fails, the files are cut back to the records before
+     *
+     * @param hcs added calculations, null for a placeholder of a broken record (so the positions of copied records stay the same)
+     * @throws IOException if the records can't be written
+     */
+    synchronized void appendAll(List<HistoryCalculation> hcs) throws IOException {
+        checkOpen();
+        loadContents();
+        List<byte[]> payloads = new ArrayList<>(hcs.size());
+        long saved = 0;
+        try {
+            for (HistoryCalculation hc : hcs) {
+                int position = count + payloads.size();
+                if (position == depths.length) {
+                    depths = Arrays.copyOf(depths, Math.max(16, position * 2));
+                }
+                if (hc == null) {
+                    depths[position] = 0;
+                    //The next record can't be a delta to it
+                    newest = null;
+                    payloads.add(PLACEHOLDER);
+                    continue;
+                }
+                byte[] content = codec.encodeContent(hc);
+                byte[] payload = codec.encodeFull(hc.getTimestamp(), content);
+                int fullLength = payload.length;
+                int depth = 0;
+                Integer same = contents.get(ByteBuffer.wrap(content));
+                boolean reference = same != null && position - same <= REFERENCE_WINDOW && depths[same] < MAX_DEPTH;
+                if (reference) {
+                    payload = codec.encodeReference(hc.getTimestamp(), position - same, fullLength);
+                    depth = depths[same] + 1;
+                } else if (newest != null && depths[position - 1] < MAX_DEPTH) {
+                    byte[] delta = codec.encodeDelta(hc, newest, 1, fullLength);
+                    if (delta.length < payload.length) {
+                        payload = delta;
+                        depth = depths[position - 1] + 1;
+                    }
+                }
+                depths[position] = depth;
+                if (!reference) {
+                    putContent(content, position);
+                }
+                newest = hc;
+                saved += fullLength - payload.length;
+                payloads.add(payload);
+            }
+            appendPayloads(payloads);
+        } catch (IOException | RuntimeException e) {
+            //The contents know records which weren't written
+            resetContents();
+            throw e;
+        }
+        if (savedBytes >= 0) {
+            savedBytes += saved;
+        }
+    }
+
+    /**
+     * Appends encoded records with one write to the log and one to the index
+     * Only the log is synced (once for all records), the index is checked by open()
+     */
+    private void appendPayloads(List<byte[]> payloads) throws IOException {
+        long size = 0;
+        for (byte[] payload : payloads) {
+            size += FRAME_BYTES + payload.length;
+        }
+        if (length + size > Integer.MAX_VALUE) {
+            throw new IOException("History log is full");
+        }
+        ByteBuffer records = ByteBuffer.allocate((int) size);
+        List<Long> offsets = new ArrayList<>(payloads.size());
+        for (byte[] payload : payloads) {
+            offsets.add(length + records.position());
+            records.putInt(payload.length);
+            records.putInt(getChecksum(payload));
+            records.put(payload);
+        }
+        records.flip();
+        try {
+            FileChannel channel = log.getChannel();
+            long position = length;
+            while (records.hasRemaining()) {
+                position += channel.write(records, position);
+            }
+            channel.force(false);
+            length = position;
+            writeOffsets(offsets);
+        } catch (IOException e) {
+            length = offsets.isEmpty() ? length : offsets.get(0);
+            log.setLength(length);
+            index.setLength((long) count * OFFSET_BYTES);
+            throw e;
+        }
+    }
+
+    /**
+     * Removes all records
+     *
+     * @throws IOException if the files can't be truncated
+     */
+    synchronized void clear() throws IOException {
+        checkOpen();
+        log.setLength(0);
+        index.setLength(0);
+        writeHeader();
+        count = 0;
+        length = HEADER_BYTES;
+        logMap = indexMap = null;
+        snapshot = null;
+        resetContents();
+        savedBytes = 0;
+    }
+
+    /**
+     * Closes the files
+     *
+     * @throws IOException if closing fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        logMap = indexMap = null;
+        snapshot = null;
+        resetContents();
+        if (log != null) {
+            log.close();
+            index.close();
+            log = index = null;
+        }
+    }
+
+    /**
+     * Appends offsets to the index and counts their records
+     */
+    private void writeOffsets(List<Long> offsets) throws IOException {
+        ByteBuffer entries = ByteBuffer.allocate(offsets.size() * OFFSET_BYTES);
+        for (long offset : offsets) {
+            entries.putLong(offset);
+        }
+        entries.flip();
+        FileChannel channel = index.getChannel();
+        long position = (long) count * OFFSET_BYTES;
+        while (entries.hasRemaining()) {
+            position += channel.write(entries, position);
+        }
+        count += offsets.size();
+    }
+
+    private long readOffset(int i) throws IOException {
+        index.seek((long) i * OFFSET_BYTES);
+        return index.readLong();
+    }
+
+    /**
+     * Returns the end of the record at the offset
+     * The last record also needs the right checksum, a wrong one means it was only partly written
+     *
+     * @param records mapped log
+     * @return end offset, -1 if there is no complete record at the offset
+     */
+    private long getRecordEnd(ByteBuffer records, long offset, boolean verify) {
+        int logLength = records.capacity();
+        if (offset + FRAME_BYTES > logLength) {
+            return -1;
+        }
+        int size = records.getInt((int) offset);
+        long end = offset + FRAME_BYTES + size;
+        if (size < 0 || end > logLength) {
+            return -1;
+        }
+        if (verify || end == logLength) {
+            byte[] payload = new byte[size];
+            ByteBuffer record = records.duplicate();
+            record.position((int) offset + FRAME_BYTES);
+            record.get(payload);
+            if (records.getInt((int) offset + LENGTH_BYTES) != getChecksum(payload)) {
+                return -1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Searches the old index for the first intact record behind a broken length
+     * The index is written in order of the records, so the position of the entry is the position of the record
+     *
+     * @param records  mapped log
+     * @param entries  mapped old index
+     * @param offset   offset of the broken length
+     * @param position position of the record with the broken length
+     * @return position of the intact record (behind position), -1 if there is none
+     */
+    private int findIntactRecord(ByteBuffer records, ByteBuffer entries, long offset, int position) {
+        for (int i = position + 1; i < entries.capacity() / OFFSET_BYTES; i++) {
+            long next = entries.getLong(i * OFFSET_BYTES);
+            if (next > offset && getRecordEnd(records, next, true) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int getChecksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Writes the header of a new log and syncs it, so a log with records always has its header
+     */
+    private void writeHeader() throws IOException {
+        log.seek(0);
+        log.writeInt(MAGIC);
+        log.getChannel().force(false);
+    }
+
+    /**
+     * Maps the complete records and index entries, only if they grew since the last mapping
+     */
+    private void map() throws IOException {
+        if (logMap == null || logMap.capacity() < length) {
+            logMap = log.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        if (indexMap == null || indexMap.capacity() < (long) count * OFFSET_BYTES) {
+            indexMap = index.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, (long) count * OFFSET_BYTES);
+        }
+    }
+
+    /**
+     * Builds the contents and depths of the records, only the log which gets appended needs them
+     */
+    private void loadContents() throws IOException {
+        if (contents != null) {
+            return;
+        }
+        contents = new HashMap<>();
+        depths = new int[Math.max(16, count)];
+        //Only the records of the window can be referenced, the records before are never decoded
+        int from = Math.max(0, count - REFERENCE_WINDOW);
+        List<HistoryCalculation> hcs = read(from, count);
+        for (int i = from; i < count; ++i) {
+            HistoryCalculation hc = hcs.get(i - from);
+            byte[] payload = readPayload(i);
+            int kind = hc == null ? HistoryCodec.FULL : codec.getKind(payload);
+            if (kind != HistoryCodec.FULL) {
+                int base = i - codec.getDistance(payload);
+                depths[i] = 1 + (base >= from ? depths[base] : readDepth(base));
+            }
+            if (hc != null && kind != HistoryCodec.REFERENCE) {
+                putContent(codec.encodeContent(hc), i);
+            }
+        }
+        newest = count == 0 ? null : hcs.get(count - 1 - from);
+    }
+
+    /**
+     * Returns the chain depth of a record before the window, follows the distances of the payloads without decoding them
+     */
+    private int readDepth(int i) throws IOException {
+        int depth = 0;
+        byte[] payload = readPayload(i);
+        while (payload != null && payload.length > 0 && codec.getKind(payload) != HistoryCodec.FULL) {
+            i -= codec.getDistance(payload);
+            ++depth;
+            payload = i < 0 ? null : readPayload(i);
+        }
+        return depth;
+    }
+
+    /**
+     * Remembers the record as target of references, unless there is one with a shorter chain in the window
+     */
+    private void putContent(byte[] content, int position) {
+        ByteBuffer key = ByteBuffer.wrap(content);
+        Integer known = contents.get(key);
+        if (known == null || position - known > REFERENCE_WINDOW || depths[position] < depths[known]) {
+            contents.put(key, position);
+        }
+    }
+
+    private void resetContents() {
+        contents = null;
+        depths = null;
+        newest = null;
+    }
+
+    private void checkOpen() throws IOException {
+        if (log == null) {
+            throw new IOException("History log is not open");
+        }
+    }
+
+    /**
+     * Complete records of the log at one point in time, read without the lock of the log
+     * A mapping stays valid when the log is appended to, closed or deleted afterwards, so readers never wait for the writer
+     */
+    static final class Snapshot {
+        private final ByteBuffer records;
+        private final ByteBuffer offsets;
+        private final int count;
+        private final HistoryCodec codec;
+
+        private Snapshot(ByteBuffer records, ByteBuffer offsets, int count, HistoryCodec codec) {
+            this.records = records;
+            this.offsets = offsets;
+            this.count = count;
+            this.codec = codec;
+        }
+
+        /**
+         * Returns the amount of records
+         *
+         * @return size of the snapshot
+         */
+        int size() {
+            return count;
+        }
+
+        /**
+         * Reads record i, only the index entry and the record itself are touched
+         *
+         * @param i position of the record (0 is the oldest)
+         * @return decoded calculation, null if the record can't be decoded
+         */
+        HistoryCalculation read(int i) {
+            return decode(readPayload(i), distance -> readBase(i, distance));
+        }
+
+        /**
+         * Reads the payload of record i without decoding it
+         *
+         * @param i position of the record (0 is the oldest)
+         * @return payload of the record, null if its checksum is wrong or open() skipped it
+         */
+        byte[] readPayload(int i) {
+            if (i < 0 || i >= count) {
+                throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + count);
+            }
+            long entry = offsets.getLong(i * OFFSET_BYTES);
+            if (entry < 0) {
+                //Placeholder of a record behind a broken length
+                return null;
+            }
+            int offset = (int) entry;
+            byte[] payload = new byte[records.getInt(offset)];
+            ByteBuffer record = records.duplicate();
+            record.position(offset + FRAME_BYTES);
+            record.get(payload);
+            if (records.getInt(offset + LENGTH_BYTES) != getChecksum(payload)) {
+                //Broken record, skipped like one which can't be decoded
+                return null;
+            }
+            return payload;
+        }
+
+        /**
+         * Reads the records from..to-1, references and deltas to records in the range are resolved without reading them again
+         *
+         * @param from first position (included)
+         * @param to   last position (excluded)
+         * @return decoded calculations in order of adding, null for broken records
+         */
+        List<HistoryCalculation> read(int from, int to) {
+            List<HistoryCalculation> result = new ArrayList<>(Math.max(0, to - from));
+            for (int i = from; i < to; ++i) {
+                int position = i;
+                result.add(decode(readPayload(i), distance -> {
+                    int base = position - distance;
+                    if (base >= from) {
+                        HistoryCalculation hc = result.get(base - from);
+                        if (hc == null) {
+                            throw new IOException("Broken base of history record " + position);
+                        }
+                        return hc;
+                    }
+                    return readBase(position, distance);
+                }));
+            }
+            return result;
+        }
+
+        /**
+         * Decodes a payload, a payload which can't be decoded is skipped
+         *
+         * @return decoded calculation, null if the payload is broken
+         */
+        private HistoryCalculation decode(byte[] payload, HistoryCodec.Resolver resolver) {
+            if (payload == null || payload.length == 0) {
+                return null;
+            }
+            try {
+                return codec.decode(payload, resolver);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        /**
+         * Reads the record which record i refers to
+         */
+        private HistoryCalculation readBase(int i, int distance) throws IOException {
+            if (distance > i) {
+                throw new IOException("History record " + i + " refers before the log");
+            }
+            HistoryCalculation base = read(i - distance);
+            if (base == null) {
+                throw new IOException("Broken base of history record " + i);
+            }
+            return base;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator.history;
+
+/**
+ * Immutable snapshot of the size of the history and of the work done by its deduplication and compaction
+ */
+public final class HistoryStats {
+    private final int entries;
+    private final long bytes;
+    private final long savedBytes;
+    private final int segments;
+    private final long compactions;
+    private final long reclaimedEntries;
+    private final long reclaimedBytes;
+
+    /**
+     * Constructor for setting up a snapshot
+     *
+     * @param entries          amount of written calculations
+     * @param bytes            size of the history files in bytes
+     * @param savedBytes       bytes saved by references and deltas
+     * @param segments         amount of segments
+     * @param compactions      amount of compactions since the history was opened
+     * @param reclaimedEntries calculations dropped by the compactions
+     * @param reclaimedBytes   bytes freed by the compactions
+     */
+    HistoryStats(int entries, long bytes, long savedBytes, int segments, long compactions, long reclaimedEntries, long reclaimedBytes) {
+        this.entries = entries;
+        this.bytes = bytes;
+        this.savedBytes = savedBytes;
+        this.segments = segments;
+        this.compactions = compactions;
+        this.reclaimedEntries = reclaimedEntries;
+        this.reclaimedBytes = reclaimedBytes;
+    }
+
+    public int getEntries() {
+        return this.entries;
+    }
+
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    public long getSavedBytes() {
+        return this.savedBytes;
+    }
+
+    /**
+     * Returns the size the history files would have without references and deltas divided by their size
+     *
+     * @return compression ratio, 1 for an empty history
+     */
+    public double getCompressionRatio() {
+        return bytes == 0 ? 1 : (double) (bytes + savedBytes) / bytes;
+    }
+
+    public int getSegments() {
+        return this.segments;
+    }
+
+    public long getCompactions() {
+        return this.compactions;
+    }
+
+    public long getReclaimedEntries() {
+        return this.reclaimedEntries;
+    }
+
+    public long getReclaimedBytes() {
+        return this.reclaimedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryStats{entries=" + entries + ", bytes=" + bytes + ", savedBytes=" + savedBytes + ", compressionRatio=" + getCompressionRatio() + ", segments=" + segments + ", compactions=" + compactions
+                + ", reclaimedEntries=" + reclaimedEntries + ", reclaimedBytes=" + reclaimedBytes + '}';
+    }
+}
@@ -0,0 +1,500 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator.history;
+
+import com.poorskill.poorcalculator.calculator.Calculator;
+import com.poorskill.poorcalculator.calculator.ExpressionPlan;
+import com.poorskill.poorcalculator.calculator.PrecisionPolicy;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorConstant;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorNumber;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorOperation;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorSeparator;
+import com.poorskill.poorcalculator.calculator.characters.supported.CalculatorSeparatorEnum;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedConstant;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
+import com.poorskill.poorcalculator.calculator.exceptions.BadExpressionException;
+import com.poorskill.poorcalculator.calculator.exceptions.CalculatorException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming export and import of the history as CSV or JSON Lines
+ * <p>
+ * Every line is one calculation with its timestamp, formula and result. The formula is written as tokens separated by spaces,
+ * numbers as BigDecimal strings and the other characters as + - * / ! ( ) . pi e, so unlike the display it doesn't depend on the locale.
+ * Results are written as strings (in JSON too), so no digits get lost.
+ * <ul>
+ * <li>CSV: the header timestamp,formula,result followed by one line per calculation, quoted fields are read too</li>
+ * <li>JSON Lines: one object per line, eg. {"timestamp":1589000000000,"formula":"1 + 2","result":"3"}, result null if there is none</li>
+ * </ul>
+ * Both directions work on batches of BATCH_SIZE calculations, so the memory doesn't depend on the size of the file or of the history.
+ * The export reads the history oldest first through a HistoryCursor. The import calculates the formulas of a batch again, drops lines
+ * which can't be read or whose result differs, and lets the History write the batch before the next one is read.
+ * Every formula of a batch is compiled once with Calculator.compile() and its ExpressionPlan is evaluated for every line with it,
+ * the results don't go through the ResultCache, so an import doesn't push the results of the calculator out of it.
+ * Both block while reading and writing, so they belong on a background thread.
+ */
+public final class HistoryTransfer {
+    /**
+     * Supported file formats
+     */
+    public enum Format {
+        CSV, JSON_LINES
+    }
+
+    static final int BATCH_SIZE = 512;
+    private static final String CSV_HEADER = "timestamp,formula,result";
+    private static final String TIMESTAMP = "timestamp", FORMULA = "formula", RESULT = "result";
+
+    /**
+     * Writes all calculations of the history, oldest first
+     * Calculations which got dropped by the compaction while exporting or can't be read are skipped
+     *
+     * @param history history to export
+     * @param writer  destination, flushed but not closed
+     * @param format  format of the lines
+     * @return exported calculations, rejected are the ones which couldn't be written
+     * @throws IOException if writing fails
+     */
+    public static HistoryTransferReport export(History history, Writer writer, Format format) throws IOException {
+        long start = System.nanoTime();
+        BufferedWriter out = new BufferedWriter(writer);
+        if (format == Format.CSV) {
+            out.write(CSV_HEADER);
+            out.write('\n');
+        }
+        HistoryCursor cursor = history.openCursor(BATCH_SIZE);
+        StringBuilder line = new StringBuilder();
+        long records = 0;
+        long rejected = 0;
+        for (int page = (cursor.getCount() + BATCH_SIZE - 1) / BATCH_SIZE - 1; page >= 0; --page) {
+            List<HistoryCalculation> calculations = cursor.getPage(page);
+            //Pages are newest first
+            for (int i = calculations.size() - 1; i >= 0; --i) {
+                HistoryCalculation hc = calculations.get(i);
+                if (hc == null) {
+                    continue;
+                }
+                line.setLength(0);
+                try {
+                    appendLine(line, hc, format);
+                } catch (IllegalArgumentException e) {
+                    ++rejected;
+                    continue;
+                }
+                out.append(line).append('\n');
+                ++records;
+            }
+        }
+        out.flush();
+        return new HistoryTransferReport(records, rejected, System.nanoTime() - start);
+    }
+
+    /**
+     * Reads calculations and adds the valid ones to the history in batches
+     * A calculation is valid if its formula can be calculated and gives its result, a missing result is filled in
+     *
+     * @param history history the calculations are added to
+     * @param reader  source, not closed
+     * @param format  format of the lines
+     * @return imported calculations and rejected lines
+     * @throws IOException if reading fails, the batches before are imported already
+     */
+    public static HistoryTransferReport importFrom(History history, Reader reader, Format format) throws IOException {
+        long start = System.nanoTime();
+        BufferedReader in = new BufferedReader(reader);
+        List<HistoryCalculation> batch = new ArrayList<>(BATCH_SIZE);
+        long records = 0;
+        long rejected = 0;
+        boolean firstLine = true;
+        String line;
+        while ((line = in.readLine()) != null) {
+            boolean header = firstLine && format == Format.CSV && line.trim().equals(CSV_HEADER);
+            firstLine = false;
+            if (header || line.trim().isEmpty()) {
+                continue;
+            }
+            HistoryCalculation hc = parseLine(line, format);
+            if (hc == null) {
+                ++rejected;
+                continue;
+            }
+            batch.add(hc);
+            if (batch.size() == BATCH_SIZE) {
+                int imported = importBatch(history, batch);
+                records += imported;
+                rejected += batch.size() - imported;
+                batch.clear();
+            }
+        }
+        int imported = importBatch(history, batch);
+        records += imported;
+        rejected += batch.size() - imported;
+        return new HistoryTransferReport(records, rejected, System.nanoTime() - start);
+    }
+
+    /**
+     * Writes the formula as tokens separated by spaces
+     *
+     * @param sb  destination
+     * @param ccs formula
+     * @throws IllegalArgumentException if the formula contains a character without token (eg. a number without value)
+     */
+    static void appendFormula(StringBuilder sb, List<CalculatorCharacter> ccs) {
+        for (int i = 0; i < ccs.size(); ++i) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(toToken(ccs.get(i)));
+        }
+    }
+
+    /**
+     * Reads a formula written by appendFormula()
+     *
+     * @param formula tokens separated by spaces
+     * @return calculator characters of the formula
+     * @throws BadExpressionException if a token is unknown
+     */
+    static List<CalculatorCharacter> parseFormula(String formula) throws BadExpressionException {
+        List<CalculatorCharacter> ccs = new ArrayList<>();
+        int length = formula.length();
+        int i = 0;
+        while (i < length) {
+            if (formula.charAt(i) == ' ') {
+                ++i;
+                continue;
+            }
+            int end = formula.indexOf(' ', i);
+            if (end < 0) {
+                end = length;
+            }
+            ccs.add(fromToken(formula.substring(i, end)));
+            i = end;
+        }
+        return ccs;
+    }
+
+    private static int importBatch(History history, List<HistoryCalculation> batch) {
+        List<HistoryCalculation> valid = new ArrayList<>(batch.size());
+        Map<List<CalculatorCharacter>, ExpressionPlan> plans = new HashMap<>();
+        for (HistoryCalculation hc : batch) {
+            BigDecimal result;
+            try {
+                ExpressionPlan plan = plans.get(hc.getCalculatorCharacters());
+                if (plan == null) {
+                    plan = Calculator.compile(hc.getCalculatorCharacters());
+                    plans.put(hc.getCalculatorCharacters(), plan);
+                }
+                result = plan.evaluate(PrecisionPolicy.STANDARD);
+            } catch (CalculatorException | ArithmeticException e) {
+                continue;
+            }
+            if (hc.getResult() == null) {
+                valid.add(new HistoryCalculation(hc.getCalculatorCharacters(), result, hc.getTimestamp()));
+            } else if (hc.getResult().compareTo(result) == 0) {
+                valid.add(hc);
+            }
+        }
+        if (!valid.isEmpty()) {
+            history.addAllAndWrite(valid);
+        }
+        return valid.size();
+    }
+
+    private static void appendLine(StringBuilder sb, HistoryCalculation hc, Format format) {
+        BigDecimal result = hc.getResult();
+        if (format == Format.CSV) {
+            //Tokens contain neither commas nor quotes, so nothing has to be quoted
+            sb.append(hc.getTimestamp()).append(',');
+            appendFormula(sb, hc.getCalculatorCharacters());
+            sb.append(',');
+            if (result != null) {
+                sb.append(result.toString());
+            }
+        } else {
+            sb.append("{\"" + TIMESTAMP + "\":").append(hc.getTimestamp()).append(",\"" + FORMULA + "\":\"");
+            appendFormula(sb, hc.getCalculatorCharacters());
+            sb.append("\",\"" + RESULT + "\":");
+            if (result != null) {
+                sb.append('"').append(result.toString()).append('"');
+            } else {
+                sb.append("null");
+            }
+            sb.append('}');
+        }
+    }
+
+    private static HistoryCalculation parseLine(String line, Format format) {
+        try {
+            if (format == Format.CSV) {
+                List<String> fields = splitCsv(line);
+                if (fields.size() != 3) {
+                    return null;
+                }
+                return toCalculation(fields.get(0), fields.get(1), fields.get(2));
+            }
+            Map<String, String> fields = new JsonLine(line).readObject();
+            if (!fields.containsKey(FORMULA)) {
+                return null;
+            }
+            return toCalculation(fields.get(TIMESTAMP), fields.get(FORMULA), fields.get(RESULT));
+        } catch (ParseException | BadExpressionException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static HistoryCalculation toCalculation(String timestamp, String formula, String result) throws BadExpressionException {
+        //Missing timestamps are 0 like the ones of calculations saved before they were recorded
+        long time = timestamp == null || timestamp.trim().isEmpty() ? 0 : Long.parseLong(timestamp.trim());
+        BigDecimal value = result == null || result.trim().isEmpty() ? null : new BigDecimal(result.trim());
+        return new HistoryCalculation(parseFormula(formula), value, time);
+    }
+
+    private static List<String> splitCsv(String line) throws ParseException {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); ++i) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    //Escaped quote
+                    field.append('"');
+                    ++i;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new ParseException("Unclosed quote", line.length());
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String toToken(CalculatorCharacter cc) {
+        if (cc instanceof CalculatorNumber && ((CalculatorNumber) cc).getValue() != null) {
+            return ((CalculatorNumber) cc).getValue().toString();
+        } else if (cc instanceof CalculatorOperation) {
+            switch (((CalculatorOperation) cc).getOperation()) {
+                case Add:
+                    return "+";
+                case Sub:
+                    return "-";
+                case Multiply:
+                    return "*";
+                case Divide:
+                    return "/";
+                case Faculty:
+                    return "!";
+            }
+        } else if (cc instanceof CalculatorSeparator) {
+            switch (((CalculatorSeparator) cc).getSeparator()) {
+                case LeftBracket:
+                    return "(";
+                case RightBracket:
+                    return ")";
+                case DecimalSeparator:
+                    return ".";
+            }
+        } else if (cc instanceof CalculatorConstant) {
+            switch (((CalculatorConstant) cc).getConstant()) {
+                case Pi:
+                    return "pi";
+                case E:
+                    return "e";
+            }
+        }
+        throw new IllegalArgumentException("No token for " + cc);
+    }
+
+    private static CalculatorCharacter fromToken(String token) throws BadExpressionException {
+        switch (token) {
+            case "+":
+                return CalculatorOperation.valueOf(SupportedOperations.Add);
+            case "-":
+                return CalculatorOperation.valueOf(SupportedOperations.Sub);
+            case "*":
+                return CalculatorOperation.valueOf(SupportedOperations.Multiply);
+            case "/":
+                return CalculatorOperation.valueOf(SupportedOperations.Divide);
+            case "!":
+                return CalculatorOperation.valueOf(SupportedOperations.Faculty);
+            case "(":
+                return CalculatorSeparator.valueOf(CalculatorSeparatorEnum.LeftBracket);
+            case ")":
+                return CalculatorSeparator.valueOf(CalculatorSeparatorEnum.RightBracket);
+            case ".":
+                return CalculatorSeparator.valueOf(CalculatorSeparatorEnum.DecimalSeparator);
+            case "pi":
+                return CalculatorConstant.valueOf(SupportedConstant.Pi);
+            case "e":
+                return CalculatorConstant.valueOf(SupportedConstant.E);
+        }
+        try {
+            return new CalculatorNumber(new BigDecimal(token));
+        } catch (NumberFormatException e) {
+            throw new BadExpressionException("Unknown token: " + token, e);
+        }
+    }
+
+    /**
+     * Reader of one flat JSON object, values are returned as text (strings unescaped, null as null)
+     */
+    private static final class JsonLine {
+        private final String text;
+        private int position;
+
+        JsonLine(String text) {
+            this.text = text;
+        }
+
+        Map<String, String> readObject() throws ParseException {
+            Map<String, String> fields = new HashMap<>();
+            expect('{');
+            if (peek() == '}') {
+                ++position;
+            } else {
+                do {
+                    String key = readString();
+                    expect(':');
+                    fields.put(key, readValue());
+                } while (next() == ',');
+                --position;
+                expect('}');
+            }
+            if (peek() != 0) {
+                throw new ParseException("Text after the object", position);
+            }
+            return fields;
+        }
+
+        private String readValue() throws ParseException {
+            if (peek() == '"') {
+                return readString();
+            }
+            int start = position;
+            while (position < text.length() && ",}] \t".indexOf(text.charAt(position)) < 0) {
+                ++position;
+            }
+            String value = text.substring(start, position);
+            if (value.isEmpty()) {
+                throw new ParseException("Missing value", start);
+            }
+            return value.equals("null") ? null : value;
+        }
+
+        private String readString() throws ParseException {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw new ParseException("Broken escape", position);
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new ParseException("Broken escape", position);
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        //\" \\ \/
+                        sb.append(escaped);
+                }
+            }
+            throw new ParseException("Unclosed string", position);
+        }
+
+        private void expect(char c) throws ParseException {
+            if (next() != c) {
+                throw new ParseException("Expected " + c, position - 1);
+            }
+        }
+
+        //Next character after whitespace, 0 at the end
+        private char next() {
+            char c = peek();
+            ++position;
+            return c;
+        }
+
+        private char peek() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                ++position;
+            }
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator.history;
+
+/**
+ * Immutable summary of an export or import of the history
+ */
+public final class HistoryTransferReport {
+    private final long records;
+    private final long rejected;
+    private final long nanos;
+
+    /**
+     * Constructor for setting up a summary
+     *
+     * @param records  exported or imported calculations
+     * @param rejected lines which couldn't be read or failed the validation
+     * @param nanos    duration of the transfer in nanoseconds
+     */
+    HistoryTransferReport(long records, long rejected, long nanos) {
+        this.records = records;
+        this.rejected = rejected;
+        this.nanos = nanos;
+    }
+
+    public long getRecords() {
+        return this.records;
+    }
+
+    public long getRejected() {
+        return this.rejected;
+    }
+
+    public long getMillis() {
+        return this.nanos / 1_000_000;
+    }
+
+    /**
+     * Returns the throughput of the transfer, rejected lines count as processed
+     *
+     * @return processed lines per second, 0 if the transfer took no measurable time
+     */
+    public double getRecordsPerSecond() {
+        return nanos == 0 ? 0 : (records + rejected) * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryTransferReport{records=" + records + ", rejected=" + rejected + ", millis=" + getMillis() + ", recordsPerSecond=" + getRecordsPerSecond() + '}';
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator.history;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable retention policy of the history, calculations beyond one of the limits are dropped by the compaction (oldest first)
+ * <p>
+ * A limit of 0 means no limit. The age is checked per segment: a segment is dropped when its newest calculation is too old.
+ * The compaction starts only when the history is an eighth over the entry or byte limit, so it doesn't run with every calculation.
+ */
+public final class RetentionPolicy {
+    //Keeps everything like the old history.ser
+    public static final RetentionPolicy UNLIMITED = new RetentionPolicy(0, 0, 0);
+    //Enough for heavy users, the history stays below a few MB
+    public static final RetentionPolicy DEFAULT = new RetentionPolicy(10000, 4 << 20, TimeUnit.DAYS.toMillis(365));
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+
+    /**
+     * Constructor for setting up a policy
+     *
+     * @param maxEntries   maximum amount of calculations, 0 for no limit
+     * @param maxBytes     maximum size of the history files in bytes, 0 for no limit
+     * @param maxAgeMillis maximum age of the calculations in milliseconds, 0 for no limit
+     */
+    public RetentionPolicy(int maxEntries, long maxBytes, long maxAgeMillis) {
+        if (maxEntries < 0 || maxBytes < 0 || maxAgeMillis < 0) {
+            throw new IllegalArgumentException("limits must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    public long getMaxAgeMillis() {
+        return this.maxAgeMillis;
+    }
+
+    /**
+     * Returns the amount of calculations which are dropped before the compaction starts
+     *
+     * @param entries amount of calculations
+     * @return calculations over the limit, 0 if there is no entry limit
+     */
+    int getExcessEntries(int entries) {
+        return maxEntries == 0 ? 0 : Math.max(0, entries - maxEntries);
+    }
+
+    /**
+     * Returns the bytes which are dropped to get below the byte limit
+     *
+     * @param bytes size of the history files
+     * @return bytes over the limit, 0 if there is no byte limit
+     */
+    long getExcessBytes(long bytes) {
+        return maxBytes == 0 ? 0 : Math.max(0, bytes - maxBytes);
+    }
+
+    /**
+     * Checks if a segment whose newest calculation was written at lastModified is expired
+     *
+     * @param lastModified time of the newest calculation of the segment
+     * @param now          current time
+     * @return true if the segment is too old
+     */
+    boolean isExpired(long lastModified, long now) {
+        return maxAgeMillis != 0 && now - lastModified > maxAgeMillis;
+    }
+
+    /**
+     * Checks if the history is far enough over a limit to start the compaction
+     *
+     * @param entries amount of calculations
+     * @param bytes   size of the history files
+     * @return true if the compaction should start
+     */
+    boolean isCompactionDue(int entries, long bytes) {
+        return getExcessEntries(entries) > maxEntries / 8 || getExcessBytes(bytes) > maxBytes / 8;
+    }
+}
@@ -0,0 +1,487 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator.history;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * History split into rolling segments, every segment is a HistoryLog with its own index
+ * <p>
+ * A segment is named after the sequence number of its first calculation (eg. 2048.log and 2048.idx), so the segments
+ * sort in order of adding. A new segment is started when the newest one is full. The compaction drops whole segments
+ * (expired or beyond the limits of the RetentionPolicy) and rewrites the oldest remaining segment when only a part
+ * of it has to go, so its cost depends on the size of a segment and not on the size of the history.
+ * <p>
+ * A rewritten segment is written to temporary files and renamed afterwards. If the old segment wasn't deleted before a crash,
+ * open() finds both and keeps the rewritten one.
+ * <p>
+ * Every change publishes a new Snapshot of the segments. Reads go through the current snapshot and never take the lock
+ * which appendAll() holds during its fsync, a snapshot stays readable after the compaction deleted its segments.
+ */
+final class SegmentedHistoryLog implements Closeable {
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String TEMP_SUFFIX = ".tmp";
+    //A new segment is started when the newest one holds this many calculations or bytes
+    static final int SEGMENT_ENTRIES = 1024;
+    static final long SEGMENT_BYTES = 256 << 10;
+
+    private final File directory;
+    private final HistoryCodec codec;
+    private final RetentionPolicy policy;
+    //Segments in order of adding, the last one gets appended
+    private final List<Segment> segments = new ArrayList<>();
+    private boolean opened;
+    //Amount of calculations of all segments
+    private int count;
+    //Sequence number of the next calculation
+    private long sequence;
+    private long compactions;
+    private long reclaimedEntries;
+    private long reclaimedBytes;
+    //Segments which readers see, replaced after every change
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    /**
+     * Constructor for setting up the segments, the files are opened with open()
+     *
+     * @param directory directory of the segment files
+     * @param codec     codec of the record payloads
+     * @param policy    limits of the compaction
+     */
+    SegmentedHistoryLog(File directory, HistoryCodec codec, RetentionPolicy policy) {
+        this.directory = directory;
+        this.codec = codec;
+        this.policy = policy;
+    }
+
+    /**
+     * Opens (or creates) all segments and removes leftovers of an interrupted compaction
+     *
+     * @throws IOException if a segment can't be opened
+     */
+    synchronized void open() throws IOException {
+        if (opened) {
+            return;
+        }
+        createDirectory();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Can't list " + directory);
+        }
+        List<Long> bases = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                //Rewrite which wasn't finished, the old segment is still there
+                delete(file);
+            } else if (name.endsWith(LOG_SUFFIX)) {
+                try {
+                    bases.add(Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        Collections.sort(bases);
+        for (long base : bases) {
+            Segment segment = new Segment(base);
+            segment.log.open();
+            //Empty segments and old versions of a rewritten segment (which reach into it)
+            while (!segments.isEmpty() && (last().log.size() == 0 || last().getEnd() > base)) {
+                remove(segments.size() - 1);
+            }
+            segments.add(segment);
+            count += segment.log.size();
+        }
+        sequence = segments.isEmpty() ? 0 : last().getEnd();
+        opened = true;
+        publish();
+    }
+
+    /**
+     * Returns the amount of calculations
+     *
+     * @return size of all segments
+     */
+    synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Returns the segments which are in the history now, reading the snapshot doesn't wait for the writer
+     *
+     * @return snapshot of all segments
+     */
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Reads calculation i out of its segment
+     *
+     * @param i position of the calculation (0 is the oldest)
+     * @return decoded calculation, null if the record can't be decoded
+     */
+    HistoryCalculation read(int i) {
+        return snapshot.read(i);
+    }
+
+    /**
+     * Reads the calculations from..to-1
+     *
+     * @param from first position (included)
+     * @param to   last position (excluded)
+     * @return decoded calculations in order of adding, null for broken records
+     */
+    List<HistoryCalculation> read(int from, int to) {
+        return snapshot.read(from, to);
+    }
+
+    /**
+     * Appends the calculations to the newest segment, a new segment is started when it is full
+     *
+     * @param hcs added calculations
+     * @throws IOException if the records can't be written
+     */
+    synchronized void appendAll(List<HistoryCalculation> hcs) throws IOException {
+        checkOpen();
+        try {
+            int from = 0;
+            while (from < hcs.size()) {
+                Segment segment = getAppendSegment();
+                int to = Math.min(hcs.size(), from + SEGMENT_ENTRIES - segment.log.size());
+                segment.log.appendAll(hcs.subList(from, to));
+                count += to - from;
+                sequence += to - from;
+                from = to;
+            }
+        } finally {
+            //Segments which were completed before a failure are readable
+            publish();
+        }
+    }
+
+    /**
+     * Removes all segments
+     *
+     * @throws IOException if the segments can't be closed
+     */
+    synchronized void clear() throws IOException {
+        checkOpen();
+        while (!segments.isEmpty()) {
+            remove(segments.size() - 1);
+        }
+        publish();
+    }
+
+    /**
+     * Checks if the history is far enough over a limit of the policy to start the compaction
+     *
+     * @param now current time in milliseconds
+     * @return true if compact() should be called
+     */
+    synchronized boolean isCompactionDue(long now) {
+        return !segments.isEmpty() && (policy.isCompactionDue(count, getBytes()) || policy.isExpired(segments.get(0).file.lastModified(), now));
+    }
+
+    /**
+     * Drops expired segments and the oldest calculations beyond the entry and byte limit
+     *
+     * @param now current time in milliseconds
+     * @throws IOException if a segment can't be rewritten
+     */
+    synchronized void compact(long now) throws IOException {
+        checkOpen();
+        int entriesBefore = count;
+        long bytesBefore = getBytes();
+        try {
+            dropOldest(now);
+        } finally {
+            publish();
+        }
+        ++compactions;
+        reclaimedEntries += entriesBefore - count;
+        reclaimedBytes += bytesBefore - getBytes();
+    }
+
+    /**
+     * Removes the expired segments and the segments (or the part of the oldest segment) beyond the limits
+     */
+    private void dropOldest(long now) throws IOException {
+        while (!segments.isEmpty() && policy.isExpired(segments.get(0).file.lastModified(), now)) {
+            remove(0);
+        }
+        int excessEntries = policy.getExcessEntries(count);
+        long excessBytes = policy.getExcessBytes(getBytes());
+        while (!segments.isEmpty() && (excessEntries > 0 || excessBytes > 0)) {
+            HistoryLog oldest = segments.get(0).log;
+            int size = oldest.size();
+            long bytes = oldest.getBytes();
+            if (size <= excessEntries || bytes <= excessBytes) {
+                excessEntries -= size;
+                excessBytes -= bytes;
+                remove(0);
+                continue;
+            }
+            //Smallest amount of calculations which covers both excesses
+            int dropped = Math.max(excessEntries, 0);
+            while (bytes - oldest.getBytesFrom(dropped) < excessBytes) {
+                ++dropped;
+            }
+            rewriteOldest(dropped);
+            break;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the size and the compaction metrics
+     *
+     * @return HistoryStats of the segments
+     */
+    synchronized HistoryStats getStats() {
+        long savedBytes = 0;
+        for (Segment segment : segments) {
+            try {
+                savedBytes += segment.log.getSavedBytes();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return new HistoryStats(count, getBytes(), savedBytes, segments.size(), compactions, reclaimedEntries, reclaimedBytes);
+    }
+
+    /**
+     * Closes all segments
+     *
+     * @throws IOException if closing fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.log.close();
+        }
+        segments.clear();
+        count = 0;
+        opened = false;
+        snapshot = Snapshot.EMPTY;
+    }
+
+    private long getBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.log.getBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the newest segment, starts a new one if there is none or it is full
+     */
+    private Segment getAppendSegment() throws IOException {
+        if (segments.isEmpty() || last().log.size() >= SEGMENT_ENTRIES || last().log.getBytes() >= SEGMENT_BYTES) {
+            Segment segment = new Segment(sequence);
+            segment.log.open();
+            segments.add(segment);
+        }
+        return last();
+    }
+
+    /**
+     * Replaces the oldest segment by a copy without its first calculations
+     * The calculations are appended again, since references and deltas may point to dropped records.
+     * Broken records are copied as placeholders, so the positions of the later calculations stay the same. The copy keeps the age of the segment.
+     *
+     * @param dropped amount of calculations which are not copied
+     */
+    private void rewriteOldest(int dropped) throws IOException {
+        if (dropped == 0) {
+            return;
+        }
+        Segment oldest = segments.get(0);
+        List<HistoryCalculation> hcs = oldest.log.read(dropped, oldest.log.size());
+        Segment rewritten = new Segment(oldest.base + dropped);
+        File tempFile = new File(directory, rewritten.file.getName() + TEMP_SUFFIX);
+        File tempIndexFile = new File(directory, rewritten.indexFile.getName() + TEMP_SUFFIX);
+        try (HistoryLog copy = new HistoryLog(tempFile, tempIndexFile, codec)) {
+            copy.open();
+            copy.appendAll(hcs);
+        }
+        //If the age can't be kept, the copy only expires later
+        tempFile.setLastModified(oldest.file.lastModified());
+        //A log without index is indexed again by open(), so the log is renamed first
+        if (!tempFile.renameTo(rewritten.file) || !tempIndexFile.renameTo(rewritten.indexFile)) {
+            throw new IOException("Can't rename " + tempFile);
+        }
+        remove(0);
+        rewritten.log.open();
+        segments.add(0, rewritten);
+        count += rewritten.log.size();
+    }
+
+    /**
+     * Closes and deletes segment i
+     */
+    private void remove(int i) throws IOException {
+        Segment segment = segments.remove(i);
+        count -= segment.log.size();
+        segment.log.close();
+        delete(segment.file);
+        delete(segment.indexFile);
+    }
+
+    /**
+     * Replaces the snapshot of the readers by one of the current segments
+     */
+    private void publish() throws IOException {
+        HistoryLog.Snapshot[] logs = new HistoryLog.Snapshot[segments.size()];
+        for (int i = 0; i < logs.length; ++i) {
+            logs[i] = segments.get(i).log.snapshot();
+        }
+        snapshot = new Snapshot(logs);
+    }
+
+    private Segment last() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private void createDirectory() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (!opened) {
+            throw new IOException("History segments are not open");
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * One segment: a HistoryLog whose first calculation has the sequence number base
+     */
+    private final class Segment {
+        final long base;
+        final File file;
+        final File indexFile;
+        final HistoryLog log;
+
+        Segment(long base) {
+            this.base = base;
+            this.file = new File(directory, base + LOG_SUFFIX);
+            this.indexFile = new File(directory, base + INDEX_SUFFIX);
+            this.log = new HistoryLog(file, indexFile, codec);
+        }
+
+        /**
+         * Returns the sequence number after the last calculation
+         *
+         * @return end of the segment
+         */
+        long getEnd() {
+            return base + log.size();
+        }
+    }
+
+    /**
+     * Segments of the history at one point in time, positions are counted over all of them like in the history
+     */
+    static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new HistoryLog.Snapshot[0]);
+        private final HistoryLog.Snapshot[] logs;
+        //Position of the first calculation of every segment
+        private final int[] starts;
+        private final int count;
+
+        private Snapshot(HistoryLog.Snapshot[] logs) {
+            this.logs = logs;
+            this.starts = new int[logs.length];
+            int start = 0;
+            for (int i = 0; i < logs.length; ++i) {
+                starts[i] = start;
+                start += logs[i].size();
+            }
+            this.count = start;
+        }
+
+        /**
+         * Returns the amount of calculations
+         *
+         * @return size of all segments
+         */
+        int size() {
+            return count;
+        }
+
+        /**
+         * Reads calculation i out of its segment
+         *
+         * @param i position of the calculation (0 is the oldest)
+         * @return decoded calculation, null if the record can't be decoded
+         */
+        HistoryCalculation read(int i) {
+            if (i < 0 || i >= count) {
+                throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + count);
+            }
+            //Last segment which starts at or before i, empty segments before it are skipped
+            int s = Arrays.binarySearch(starts, i);
+            if (s < 0) {
+                s = -s - 2;
+            }
+            while (logs[s].size() == 0 || i - starts[s] >= logs[s].size()) {
+                ++s;
+            }
+            return logs[s].read(i - starts[s]);
+        }
+
+        /**
+         * Reads the calculations from..to-1
+         *
+         * @param from first position (included)
+         * @param to   last position (excluded)
+         * @return decoded calculations in order of adding, null for broken records
+         */
+        List<HistoryCalculation> read(int from, int to) {
+            List<HistoryCalculation> result = new ArrayList<>(Math.max(0, to - from));
+            for (int s = 0; s < logs.length; ++s) {
+                int size = logs[s].size();
+                if (from < starts[s] + size && to > starts[s]) {
+                    result.addAll(logs[s].read(Math.max(from, starts[s]) - starts[s], Math.min(to, starts[s] + size) - starts[s]));
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -22,13 +22,12 @@
  */
 package com.poorskill.poorcalculator.calculator.utility;
 
-import android.annotation.SuppressLint;
-
 import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
 
 import java.math.BigDecimal;
 import java.text.DecimalFormatSymbols;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Utility Class for converting CalculatorCharacters into String for display purpose
@@ -40,12 +39,11 @@ public final class CalculatorConverter {
      * @param d bigDecimal value
      * @return value formatted with thousand separators and removed trailing zeros
      */
-    @SuppressLint("DefaultLocale")
     public static String formatResultToString(BigDecimal d) {
         if (d == null) {
             return "";
         }
-        return removeTrailingZeros(String.format("%,f", d));
+        return removeTrailingZeros(String.format(Locale.getDefault(Locale.Category.FORMAT), "%,f", d));
     }
 
     /**
@@ -0,0 +1,203 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorNumber;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorOperation;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorSeparator;
+import com.poorskill.poorcalculator.calculator.characters.supported.CalculatorSeparatorEnum;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scaling test of the evaluation with generated formulas of 10^3 to 10^6 characters and bracket nesting up to 10^5
+ * <p>
+ * Every formula is validated, estimated, compiled and evaluated on a thread with a small stack, so a recursion per bracket or per
+ * operation would fail with a StackOverflowError. Time and memory of every size are printed as one line per formula.
+ */
+public class EvaluationScalingTest {
+    //Far below the 8 MiB of the Android main thread, enough for a constant depth of calls only
+    private static final long SMALL_STACK_BYTES = 128 * 1024;
+    private static final int[] SIZES = {1_000, 10_000, 100_000, 1_000_000};
+    private static final int MAX_DEPTH = 100_000;
+
+    private static final CalculatorCharacter ONE = new CalculatorNumber(BigDecimal.ONE);
+    private static final CalculatorCharacter TWO = new CalculatorNumber(BigDecimal.valueOf(2));
+    private static final CalculatorCharacter ADD = CalculatorOperation.valueOf(SupportedOperations.Add);
+    private static final CalculatorCharacter SUB = CalculatorOperation.valueOf(SupportedOperations.Sub);
+    private static final CalculatorCharacter MULTIPLY = CalculatorOperation.valueOf(SupportedOperations.Multiply);
+    private static final CalculatorCharacter DIVIDE = CalculatorOperation.valueOf(SupportedOperations.Divide);
+    private static final CalculatorCharacter LEFT = CalculatorSeparator.valueOf(CalculatorSeparatorEnum.LeftBracket);
+    private static final CalculatorCharacter RIGHT = CalculatorSeparator.valueOf(CalculatorSeparatorEnum.RightBracket);
+
+    @Test
+    public void sumChain_scales() throws Throwable {
+        for (int size : SIZES) {
+            //1 + 1 + ... + 1
+            List<CalculatorCharacter> ccs = new ArrayList<>(size);
+            ccs.add(ONE);
+            while (ccs.size() + 2 <= size) {
+                ccs.add(ADD);
+                ccs.add(ONE);
+            }
+            measure("sum", ccs, 0, BigDecimal.valueOf((ccs.size() + 1) / 2));
+        }
+    }
+
+    @Test
+    public void multiplyChain_scales() throws Throwable {
+        for (int size : SIZES) {
+            //2 × 1 × 2 ÷ 2 × 1 × 2 ÷ 2 ...
+            List<CalculatorCharacter> ccs = new ArrayList<>(size);
+            ccs.add(TWO);
+            while (ccs.size() + 6 <= size) {
+                ccs.add(MULTIPLY);
+                ccs.add(ONE);
+                ccs.add(MULTIPLY);
+                ccs.add(TWO);
+                ccs.add(DIVIDE);
+                ccs.add(TWO);
+            }
+            measure("multiply", ccs, 0, BigDecimal.valueOf(2));
+        }
+    }
+
+    @Test
+    public void nestedBrackets_scale() throws Throwable {
+        for (int size : SIZES) {
+            //(((1))) + (((1))) + ... with the depth of the biggest block which fits, at most MAX_DEPTH
+            int depth = Math.min(MAX_DEPTH, (size - 1) / 2);
+            List<CalculatorCharacter> ccs = new ArrayList<>(size);
+            int blocks = 0;
+            do {
+                if (blocks > 0) {
+                    ccs.add(ADD);
+                }
+                appendNested(ccs, depth);
+                blocks++;
+            } while (ccs.size() + 2 * depth + 2 <= size);
+            measure("nested", ccs, depth, BigDecimal.valueOf(blocks));
+        }
+    }
+
+    @Test
+    public void leftDeepBrackets_scale() throws Throwable {
+        for (int size : SIZES) {
+            //((((1 + 1) − 1) + 1) − 1 ...), every bracket holds an operation, at most MAX_DEPTH
+            int depth = Math.min(MAX_DEPTH, (size - 1) / 4);
+            List<CalculatorCharacter> ccs = new ArrayList<>(4 * depth + 1);
+            for (int i = 0; i < depth; ++i) {
+                ccs.add(LEFT);
+            }
+            ccs.add(ONE);
+            for (int i = 0; i < depth; ++i) {
+                ccs.add(i % 2 == 0 ? ADD : SUB);
+                ccs.add(ONE);
+                ccs.add(RIGHT);
+            }
+            measure("left-deep", ccs, depth, BigDecimal.valueOf(depth % 2 == 0 ? 1 : 2));
+        }
+    }
+
+    @Test
+    public void unclosedBrackets_areClosedAtTheEnd() throws Throwable {
+        //((((2 × (2 × ... without right brackets, closed by the compiler
+        List<CalculatorCharacter> ccs = new ArrayList<>();
+        for (int i = 0; i < MAX_DEPTH; ++i) {
+            ccs.add(LEFT);
+            ccs.add(i == 0 ? TWO : ONE);
+            ccs.add(MULTIPLY);
+        }
+        ccs.add(ONE);
+        measure("unclosed", ccs, MAX_DEPTH, BigDecimal.valueOf(2));
+    }
+
+    /**
+     * Runs the whole pipeline of the formula on a thread with a small stack, checks the result and prints time and memory
+     *
+     * @param shape    name of the generated formula
+     * @param ccs      formula
+     * @param depth    highest bracket nesting of the formula
+     * @param expected result of the formula
+     */
+    private static void measure(String shape, List<CalculatorCharacter> ccs, int depth, BigDecimal expected) throws Throwable {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long[] nanos = new long[3];
+        long[] bytes = new long[1];
+        BigDecimal[] result = new BigDecimal[2];
+        Thread thread = new Thread(null, () -> {
+            try {
+                Runtime runtime = Runtime.getRuntime();
+                System.gc();
+                long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+                long start = System.nanoTime();
+                FormulaValidator.validate(ccs);
+                ExpressionPlan plan = Calculator.compile(ccs);
+                CostEstimator.DEFAULT.estimate(plan, PrecisionPolicy.STANDARD);
+                nanos[0] = System.nanoTime() - start;
+                bytes[0] = runtime.totalMemory() - runtime.freeMemory() - usedBefore;
+                start = System.nanoTime();
+                result[0] = plan.evaluate();
+                nanos[1] = System.nanoTime() - start;
+                //The live preview reduces character by character, its states are kept per character
+                start = System.nanoTime();
+                IncrementalEvaluator evaluator = new IncrementalEvaluator();
+                ccs.forEach(evaluator::append);
+                result[1] = evaluator.getResult();
+                nanos[2] = System.nanoTime() - start;
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }, "scaling-" + shape, SMALL_STACK_BYTES);
+        thread.start();
+        thread.join();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        System.out.printf("%-10s tokens=%8d depth=%7d compile=%8.2fms evaluate=%8.2fms incremental=%8.2fms compileMemory=%8dKiB%n",
+                shape, ccs.size(), depth, nanos[0] / 1e6, nanos[1] / 1e6, nanos[2] / 1e6, Math.max(0, bytes[0]) / 1024);
+        assertEquals(0, expected.compareTo(result[0]));
+        assertEquals(0, expected.compareTo(result[1]));
+        assertTrue(nanos[0] + nanos[1] > 0);
+    }
+
+    private static void appendNested(List<CalculatorCharacter> ccs, int depth) {
+        for (int i = 0; i < depth; ++i) {
+            ccs.add(LEFT);
+        }
+        ccs.add(ONE);
+        for (int i = 0; i < depth; ++i) {
+            ccs.add(RIGHT);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.exceptions.CalculatorException;
+import com.poorskill.poorcalculator.calculator.exceptions.CancelledException;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Compares the FacultyEngine with the naive product 1 * 2 * ... * n
+ * <p>
+ * The inputs lie around the table, the cache and PRIME_SWING_THRESHOLD, so every way of calculating n! is covered.
+ */
+public class FacultyEngineTest {
+    private static final FacultyEngine ENGINE = new FacultyEngine(FacultyEngine.DEFAULT_LIMIT);
+
+    @Test
+    public void smallInputs_equalTheNaiveProduct() throws CalculatorException {
+        int[] inputs = {0, 1, 20, 21, FacultyEngine.CACHE_LIMIT, FacultyEngine.CACHE_LIMIT + 1, FacultyEngine.PRIME_SWING_THRESHOLD - 1};
+        for (int n : inputs) {
+            assertEquals("n = " + n, naive(n), ENGINE.getFaculty(n));
+        }
+    }
+
+    @Test
+    public void primeSwing_equalsTheNaiveProduct() throws CalculatorException {
+        int threshold = FacultyEngine.PRIME_SWING_THRESHOLD;
+        //Odd and even inputs, halves below and above the threshold
+        int[] inputs = {threshold, threshold + 1, 2 * threshold - 1, 2 * threshold, 2 * threshold + 1, 4099, FacultyEngine.DEFAULT_LIMIT};
+        for (int n : inputs) {
+            assertEquals("n = " + n, naive(n), ENGINE.getFaculty(n));
+        }
+    }
+
+    @Test
+    public void interruptedThread_isCancelled() throws CalculatorException {
+        Thread.currentThread().interrupt();
+        try {
+            ENGINE.getFaculty(FacultyEngine.DEFAULT_LIMIT);
+            fail("faculty of an interrupted thread was calculated");
+        } catch (CancelledException e) {
+            //The interrupt is consumed like by the other cancellable loops
+            assertFalse(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    private static BigInteger naive(int n) {
+        BigInteger result = BigInteger.ONE;
+        for (int i = 2; i <= n; ++i) {
+            result = result.multiply(BigInteger.valueOf(i));
+        }
+        return result;
+    }
+}
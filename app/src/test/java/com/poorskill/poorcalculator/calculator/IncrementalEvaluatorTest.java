@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorConstant;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorNumber;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorOperation;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorSeparator;
+import com.poorskill.poorcalculator.calculator.characters.supported.CalculatorSeparatorEnum;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedConstant;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the IncrementalEvaluator with Calculator.calculateCCS() on random formulas
+ * <p>
+ * Every formula is typed character by character with random removals and clears like in the activity, after every step both
+ * results (or the classes of both exceptions) have to be equal.
+ */
+public class IncrementalEvaluatorTest {
+    private static final int FORMULAS = 5000;
+    private static final int MAX_STEPS = 30;
+    //Faculties of bigger operands are refused by the cost limit of the inline path only
+    private static final BigDecimal MAX_FACULTY_OPERAND = BigDecimal.TEN;
+
+    @Test
+    public void standardPolicy_equalsCalculateCCS() {
+        compare(PrecisionPolicy.STANDARD, new Random(1));
+    }
+
+    @Test
+    public void displayPolicy_equalsCalculateCCS() {
+        compare(PrecisionPolicy.DISPLAY, new Random(2));
+    }
+
+    @Test
+    public void extendedPolicy_equalsCalculateCCS() {
+        compare(PrecisionPolicy.EXTENDED, new Random(3));
+    }
+
+    private static void compare(PrecisionPolicy policy, Random random) {
+        for (int formula = 0; formula < FORMULAS; ++formula) {
+            IncrementalEvaluator evaluator = new IncrementalEvaluator(policy);
+            List<CalculatorCharacter> ccs = new ArrayList<>();
+            int steps = 1 + random.nextInt(MAX_STEPS);
+            for (int step = 0; step < steps; ++step) {
+                if (!ccs.isEmpty() && random.nextInt(5) == 0) {
+                    ccs.remove(ccs.size() - 1);
+                    evaluator.removeLast();
+                } else if (random.nextInt(50) == 0) {
+                    ccs.clear();
+                    evaluator.clear();
+                } else {
+                    CalculatorCharacter cc = nextCharacter(random, ccs);
+                    ccs.add(cc);
+                    evaluator.append(cc);
+                }
+                assertEquals(ccs.size(), evaluator.size());
+                assertEquals(toString(ccs), calculate(() -> Calculator.calculateCCS(ccs, policy)), calculate(evaluator::getResult));
+            }
+        }
+    }
+
+    private static CalculatorCharacter nextCharacter(Random random, List<CalculatorCharacter> ccs) {
+        switch (random.nextInt(12)) {
+            case 0:
+            case 1:
+                return new CalculatorNumber(BigDecimal.valueOf(random.nextInt(20)).movePointLeft(random.nextInt(3)));
+            case 2:
+                return new CalculatorNumber(BigDecimal.valueOf(random.nextLong() >> random.nextInt(64)).movePointLeft(random.nextInt(25) - 3));
+            case 3:
+                return CalculatorOperation.valueOf(SupportedOperations.Add);
+            case 4:
+                return CalculatorOperation.valueOf(SupportedOperations.Sub);
+            case 5:
+                return CalculatorOperation.valueOf(SupportedOperations.Multiply);
+            case 6:
+                return CalculatorOperation.valueOf(SupportedOperations.Divide);
+            case 7:
+                return isSmallNumber(ccs) ? CalculatorOperation.valueOf(SupportedOperations.Faculty) : CalculatorOperation.valueOf(SupportedOperations.Add);
+            case 8:
+                return CalculatorSeparator.valueOf(CalculatorSeparatorEnum.LeftBracket);
+            case 9:
+                return CalculatorSeparator.valueOf(CalculatorSeparatorEnum.RightBracket);
+            case 10:
+                //A number without value while typing is refused by both
+                return random.nextInt(30) == 0 ? new CalculatorNumber(null) : CalculatorSeparator.valueOf(CalculatorSeparatorEnum.DecimalSeparator);
+            default:
+                return CalculatorConstant.valueOf(random.nextBoolean() ? SupportedConstant.Pi : SupportedConstant.E);
+        }
+    }
+
+    private static boolean isSmallNumber(List<CalculatorCharacter> ccs) {
+        if (ccs.isEmpty() || !(ccs.get(ccs.size() - 1) instanceof CalculatorNumber)) {
+            return false;
+        }
+        BigDecimal value = ((CalculatorNumber) ccs.get(ccs.size() - 1)).getValue();
+        return value != null && value.abs().compareTo(MAX_FACULTY_OPERAND) < 0;
+    }
+
+    /**
+     * Returns the result or the class of the exception, so failing formulas are compared as well
+     */
+    private static Object calculate(Calculation calculation) {
+        try {
+            return calculation.calculate();
+        } catch (Exception e) {
+            return e.getClass();
+        }
+    }
+
+    private static String toString(List<CalculatorCharacter> ccs) {
+        StringBuilder sb = new StringBuilder();
+        for (CalculatorCharacter cc : ccs) {
+            sb.append(cc instanceof CalculatorNumber && ((CalculatorNumber) cc).getValue() == null ? "null" : cc.toStringValue()).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private interface Calculation {
+        BigDecimal calculate() throws Exception;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorNumber;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the NumberAccumulator with the BigDecimal of the typed characters
+ * <p>
+ * Numbers are typed with many zeros and more digits than a chunk, so removals cross the chunk boundaries and the trailing zeros
+ * have to be found again. Numbers returned before later changes have to keep their value.
+ */
+public class NumberAccumulatorTest {
+    private static final int NUMBERS = 2000;
+    private static final int MAX_STEPS = 80;
+
+    @Test
+    public void randomTyping_equalsTheTypedCharacters() {
+        Random random = new Random(1);
+        for (int n = 0; n < NUMBERS; ++n) {
+            NumberAccumulator accumulator = new NumberAccumulator();
+            StringBuilder typed = new StringBuilder();
+            List<CalculatorNumber> numbers = new ArrayList<>();
+            List<BigDecimal> values = new ArrayList<>();
+            int steps = random.nextInt(MAX_STEPS);
+            for (int step = 0; step < steps; ++step) {
+                int action = random.nextInt(10);
+                if (action < 2) {
+                    boolean removed = accumulator.removeLast();
+                    assertEquals(typed.length() > 0, removed);
+                    if (removed) {
+                        typed.setLength(typed.length() - 1);
+                    }
+                } else if (action < 3) {
+                    boolean appended = accumulator.appendSeparator();
+                    assertEquals(typed.indexOf(".") < 0, appended);
+                    if (appended) {
+                        typed.append('.');
+                    }
+                } else {
+                    //Mostly zeros, so the trailing zeros span several chunks
+                    int digit = random.nextInt(3) == 0 ? 1 + random.nextInt(9) : 0;
+                    accumulator.appendDigit(digit);
+                    typed.append(digit);
+                }
+                assertState(typed.toString(), accumulator);
+                if (random.nextInt(8) == 0) {
+                    numbers.add(accumulator.toNumber());
+                    values.add(expectedValue(typed.toString()));
+                }
+            }
+            for (int i = 0; i < numbers.size(); ++i) {
+                assertEquals(values.get(i), numbers.get(i).getValue());
+            }
+        }
+    }
+
+    @Test
+    public void trailingZeros_areFoundAcrossChunks() {
+        NumberAccumulator accumulator = new NumberAccumulator();
+        StringBuilder typed = new StringBuilder("7");
+        accumulator.appendDigit(7);
+        for (int i = 0; i < 40; ++i) {
+            accumulator.appendDigit(0);
+            typed.append('0');
+        }
+        accumulator.appendDigit(3);
+        typed.append('3');
+        assertEquals(0, accumulator.getTrailingZeros());
+        while (typed.length() > 0) {
+            accumulator.removeLast();
+            typed.setLength(typed.length() - 1);
+            assertState(typed.toString(), accumulator);
+        }
+        assertTrue(accumulator.isEmpty());
+    }
+
+    @Test
+    public void separator_isRemovedBeforeTheDigits() {
+        NumberAccumulator accumulator = new NumberAccumulator();
+        accumulator.appendDigit(2);
+        assertTrue(accumulator.appendSeparator());
+        assertFalse(accumulator.appendSeparator());
+        assertTrue(accumulator.endsWithSeparator());
+        accumulator.appendDigit(5);
+        accumulator.appendDigit(0);
+        assertState("2.50", accumulator);
+        accumulator.removeLast();
+        accumulator.removeLast();
+        assertState("2.", accumulator);
+        accumulator.removeLast();
+        assertState("2", accumulator);
+        assertFalse(accumulator.isDecimal());
+    }
+
+    @Test
+    public void set_isEditedLikeTypedDigits() {
+        String[] values = {"-120.50", "0.05", "1E+40", "-12345678901234567890.123456789012345678900", "0"};
+        for (String value : values) {
+            NumberAccumulator accumulator = new NumberAccumulator();
+            accumulator.set(new BigDecimal(value));
+            assertEquals(new BigDecimal(value).stripTrailingZeros(), accumulator.getValue());
+            String typed = new BigDecimal(value).stripTrailingZeros().toPlainString();
+            assertState(typed, accumulator);
+            while (!accumulator.isEmpty()) {
+                accumulator.removeLast();
+                typed = typed.substring(0, typed.length() - 1);
+                if (typed.equals("-")) {
+                    typed = "";
+                }
+                assertState(typed, accumulator);
+            }
+        }
+    }
+
+    private static void assertState(String typed, NumberAccumulator accumulator) {
+        String digits = typed.replace("-", "").replace(".", "");
+        int zeros = 0;
+        while (zeros < digits.length() && digits.charAt(digits.length() - 1 - zeros) == '0') {
+            zeros++;
+        }
+        assertEquals(typed, zeros, accumulator.getTrailingZeros());
+        assertEquals(typed, typed.contains("."), accumulator.isDecimal());
+        assertEquals(typed, typed.endsWith("."), accumulator.endsWithSeparator());
+        assertEquals(typed, expectedValue(typed), accumulator.getValue());
+    }
+
+    private static BigDecimal expectedValue(String typed) {
+        if (typed.replace("-", "").replace(".", "").isEmpty()) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal value = new BigDecimal(typed).stripTrailingZeros();
+        return value.signum() == 0 ? BigDecimal.ZERO : value;
+    }
+}
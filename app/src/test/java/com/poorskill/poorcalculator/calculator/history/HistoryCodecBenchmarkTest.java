@@ -0,0 +1,186 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator.history;
+
+import com.poorskill.poorcalculator.calculator.Calculator;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorConstant;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorNumber;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorOperation;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorSeparator;
+import com.poorskill.poorcalculator.calculator.characters.supported.CalculatorSeparatorEnum;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedConstant;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
+import com.poorskill.poorcalculator.calculator.exceptions.CalculatorException;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Size and speed of the HistoryCodec compared to the Java serialization it replaced
+ * <p>
+ * The same generated calculations (fixed seed, fixed timestamps) are encoded as FULL records, as one ObjectOutputStream per record
+ * and as one serialized ArrayList like the old history.ser. Bytes per entry are reproducible, the times depend on the machine
+ * and are printed only.
+ */
+public class HistoryCodecBenchmarkTest {
+    private static final int ENTRIES = 2000;
+    private static final int ROUNDS = 5;
+    private static final long SEED = 20201017L;
+    //About 52 against 329 bytes per entry (6.3x) with these calculations, short of an order of magnitude, guards against regressions only
+    private static final int MIN_RATIO = 5;
+
+    private static final SupportedOperations[] OPERATIONS = {SupportedOperations.Add, SupportedOperations.Sub,
+            SupportedOperations.Multiply, SupportedOperations.Divide};
+
+    @Test
+    public void codec_isSmallerThanJavaSerialization() throws Exception {
+        List<HistoryCalculation> hcs = generate(ENTRIES, new Random(SEED));
+        HistoryCodec codec = new HistoryCodec(HistoryCodec.NO_PRECISION_CAP);
+
+        long codecBytes = 0, encodeNanos = Long.MAX_VALUE, decodeNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; ++round) {
+            List<byte[]> payloads = new ArrayList<>(hcs.size());
+            long start = System.nanoTime();
+            for (HistoryCalculation hc : hcs) {
+                payloads.add(codec.encode(hc));
+            }
+            encodeNanos = Math.min(encodeNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < payloads.size(); ++i) {
+                HistoryCalculation decoded = codec.decode(payloads.get(i));
+                if (round == 0) {
+                    assertRoundTrip(hcs.get(i), decoded);
+                }
+            }
+            decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+            codecBytes = 0;
+            for (byte[] payload : payloads) {
+                codecBytes += payload.length;
+            }
+        }
+
+        long recordBytes = 0, serializeNanos = Long.MAX_VALUE, deserializeNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; ++round) {
+            List<byte[]> records = new ArrayList<>(hcs.size());
+            long start = System.nanoTime();
+            for (HistoryCalculation hc : hcs) {
+                records.add(serialize(hc));
+            }
+            serializeNanos = Math.min(serializeNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (byte[] record : records) {
+                deserialize(record);
+            }
+            deserializeNanos = Math.min(deserializeNanos, System.nanoTime() - start);
+            recordBytes = 0;
+            for (byte[] record : records) {
+                recordBytes += record.length;
+            }
+        }
+        long listBytes = serialize(new ArrayList<>(hcs)).length;
+
+        double codecPerEntry = (double) codecBytes / hcs.size();
+        double listPerEntry = (double) listBytes / hcs.size();
+        System.out.printf("codec:                %7.1f bytes/entry, encode %6.2fus, decode %6.2fus%n",
+                codecPerEntry, encodeNanos / 1e3 / hcs.size(), decodeNanos / 1e3 / hcs.size());
+        System.out.printf("ObjectOutputStream:   %7.1f bytes/entry, encode %6.2fus, decode %6.2fus%n",
+                (double) recordBytes / hcs.size(), serializeNanos / 1e3 / hcs.size(), deserializeNanos / 1e3 / hcs.size());
+        System.out.printf("history.ser (list):   %7.1f bytes/entry, %.1fx the codec%n", listPerEntry, listPerEntry / codecPerEntry);
+        assertTrue(codecBytes * MIN_RATIO < listBytes);
+        assertTrue(codecBytes < recordBytes);
+    }
+
+    /**
+     * Generates typed-looking calculations: numbers with up to 4 decimal places, the four operations, brackets, faculties and constants
+     */
+    private static List<HistoryCalculation> generate(int amount, Random random) {
+        List<HistoryCalculation> hcs = new ArrayList<>(amount);
+        long timestamp = 1600000000000L;
+        while (hcs.size() < amount) {
+            List<CalculatorCharacter> ccs = new ArrayList<>();
+            int values = 2 + random.nextInt(6);
+            boolean open = false;
+            for (int i = 0; i < values; ++i) {
+                if (i > 0) {
+                    ccs.add(CalculatorOperation.valueOf(OPERATIONS[random.nextInt(OPERATIONS.length)]));
+                }
+                if (!open && i + 1 < values && random.nextInt(4) == 0) {
+                    ccs.add(CalculatorSeparator.valueOf(CalculatorSeparatorEnum.LeftBracket));
+                    open = true;
+                }
+                if (random.nextInt(10) == 0) {
+                    ccs.add(CalculatorConstant.valueOf(random.nextBoolean() ? SupportedConstant.Pi : SupportedConstant.E));
+                } else {
+                    ccs.add(new CalculatorNumber(BigDecimal.valueOf(random.nextInt(100000), random.nextInt(5))));
+                    if (random.nextInt(12) == 0) {
+                        ccs.set(ccs.size() - 1, new CalculatorNumber(BigDecimal.valueOf(random.nextInt(8))));
+                        ccs.add(CalculatorOperation.valueOf(SupportedOperations.Faculty));
+                    }
+                }
+                if (open && random.nextInt(2) == 0) {
+                    ccs.add(CalculatorSeparator.valueOf(CalculatorSeparatorEnum.RightBracket));
+                    open = false;
+                }
+            }
+            try {
+                hcs.add(new HistoryCalculation(ccs, Calculator.calculateCCS(ccs), timestamp += 1000 + random.nextInt(60000)));
+            } catch (CalculatorException e) {
+                //Division by zero, not saved in the history either
+            }
+        }
+        return hcs;
+    }
+
+    private static void assertRoundTrip(HistoryCalculation expected, HistoryCalculation actual) {
+        assertEquals(expected.getCalculatorCharacters(), actual.getCalculatorCharacters());
+        assertEquals(expected.getResult(), actual.getResult());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+}
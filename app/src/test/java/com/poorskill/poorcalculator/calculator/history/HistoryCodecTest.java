@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator.history;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorConstant;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorNumber;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorOperation;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorSeparator;
+import com.poorskill.poorcalculator.calculator.characters.supported.CalculatorSeparatorEnum;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedConstant;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips of the HistoryCodec records: FULL, REFERENCE and DELTA
+ */
+public class HistoryCodecTest {
+    private static final long TIMESTAMP = 1600000000000L;
+
+    private final HistoryCodec codec = new HistoryCodec(HistoryCodec.NO_PRECISION_CAP);
+
+    @Test
+    public void full_roundTripsEveryCharacterAndValue() throws IOException {
+        List<CalculatorCharacter> ccs = Arrays.asList(
+                CalculatorSeparator.valueOf(CalculatorSeparatorEnum.LeftBracket),
+                number("-12.5"), operation(SupportedOperations.Add), number("123456789012345678901234567890.123"),
+                CalculatorSeparator.valueOf(CalculatorSeparatorEnum.RightBracket),
+                operation(SupportedOperations.Multiply), CalculatorConstant.valueOf(SupportedConstant.Pi),
+                operation(SupportedOperations.Sub), CalculatorConstant.valueOf(SupportedConstant.E),
+                operation(SupportedOperations.Divide), number("3"), operation(SupportedOperations.Faculty),
+                CalculatorSeparator.valueOf(CalculatorSeparatorEnum.DecimalSeparator), new CalculatorNumber(null));
+        HistoryCalculation hc = new HistoryCalculation(ccs, new BigDecimal("-1.000E+40"), TIMESTAMP);
+        byte[] payload = codec.encode(hc);
+        assertEquals(HistoryCodec.FULL, codec.getKind(payload));
+        assertEquals(payload.length, codec.getFullLength(payload));
+        assertRoundTrip(hc, codec.decode(payload));
+    }
+
+    @Test
+    public void full_roundTripsWithoutResult() throws IOException {
+        HistoryCalculation hc = new HistoryCalculation(Arrays.asList(number("1"), operation(SupportedOperations.Divide), number("0")), null, TIMESTAMP);
+        assertRoundTrip(hc, codec.decode(codec.encode(hc)));
+    }
+
+    @Test
+    public void reference_resolvesTheContentOfItsRecord() throws IOException {
+        HistoryCalculation base = calculation("2", SupportedOperations.Multiply, "21", "42");
+        HistoryCalculation hc = new HistoryCalculation(base.getCalculatorCharacters(), base.getResult(), TIMESTAMP + 1000);
+        int fullLength = codec.encode(hc).length;
+        byte[] payload = codec.encodeReference(hc.getTimestamp(), 3, fullLength);
+        assertEquals(HistoryCodec.REFERENCE, codec.getKind(payload));
+        assertEquals(fullLength, codec.getFullLength(payload));
+        assertEquals(3, codec.getDistance(payload));
+        assertRoundTrip(hc, codec.decode(payload, distance -> {
+            assertEquals(3, distance);
+            return base;
+        }));
+    }
+
+    @Test
+    public void delta_keepsTheCommonStartAndEndOfItsBase() throws IOException {
+        HistoryCalculation base = new HistoryCalculation(Arrays.asList(number("1"), operation(SupportedOperations.Add), number("2"),
+                operation(SupportedOperations.Multiply), number("3")), new BigDecimal("7"), TIMESTAMP);
+        HistoryCalculation hc = new HistoryCalculation(Arrays.asList(number("1"), operation(SupportedOperations.Sub), number("5"),
+                operation(SupportedOperations.Multiply), number("3")), new BigDecimal("-14"), TIMESTAMP + 1000);
+        int fullLength = codec.encode(hc).length;
+        byte[] payload = codec.encodeDelta(hc, base, 1, fullLength);
+        assertEquals(HistoryCodec.DELTA, codec.getKind(payload));
+        assertEquals(fullLength, codec.getFullLength(payload));
+        assertEquals(1, codec.getDistance(payload));
+        assertRoundTrip(hc, codec.decode(payload, distance -> base));
+    }
+
+    @Test
+    public void reference_againstAnotherBase_isRefused() throws IOException {
+        HistoryCalculation hc = calculation("2", SupportedOperations.Multiply, "21", "42");
+        byte[] payload = codec.encodeReference(TIMESTAMP, 1, codec.encode(hc).length);
+        HistoryCalculation other = calculation("123456", SupportedOperations.Add, "654321", "777777");
+        try {
+            codec.decode(payload, distance -> other);
+            fail("Resolved against the wrong base");
+        } catch (IOException expected) {
+            //The length of the FULL record doesn't match
+        }
+    }
+
+    @Test
+    public void reference_withoutResolver_isRefused() {
+        try {
+            codec.decode(codec.encodeReference(TIMESTAMP, 1, 10));
+            fail("Decoded a reference without its record");
+        } catch (IOException expected) {
+            //decode(byte[]) reads FULL records only
+        }
+    }
+
+    @Test
+    public void unknownVersion_isRefused() {
+        try {
+            codec.decode(new byte[]{3, 0, 0});
+            fail("Decoded an unknown version");
+        } catch (IOException expected) {
+            //Written by a newer version
+        }
+    }
+
+    @Test
+    public void precisionCap_roundsTheResultOnly() throws IOException {
+        HistoryCodec capped = new HistoryCodec(5);
+        HistoryCalculation hc = calculation("2", SupportedOperations.Divide, "3", "0.66666666666666666666");
+        HistoryCalculation decoded = capped.decode(capped.encode(hc));
+        assertEquals(hc.getCalculatorCharacters(), decoded.getCalculatorCharacters());
+        assertEquals(new BigDecimal("0.66667"), decoded.getResult());
+    }
+
+    private static HistoryCalculation calculation(String x, SupportedOperations operation, String y, String result) {
+        return new HistoryCalculation(Arrays.asList(number(x), operation(operation), number(y)), new BigDecimal(result), TIMESTAMP);
+    }
+
+    private static CalculatorCharacter number(String value) {
+        return new CalculatorNumber(new BigDecimal(value));
+    }
+
+    private static CalculatorCharacter operation(SupportedOperations operation) {
+        return CalculatorOperation.valueOf(operation);
+    }
+
+    private static void assertRoundTrip(HistoryCalculation expected, HistoryCalculation actual) {
+        assertEquals(expected.getCalculatorCharacters(), actual.getCalculatorCharacters());
+        assertEquals(expected.getResult(), actual.getResult());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.calculator.history;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorNumber;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorOperation;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Crash recovery of the HistoryLog: a log whose last record got cut off or corrupted keeps every intact record after open()
+ * <p>
+ * The calculations repeat and differ in one operand only, so the log holds FULL, REFERENCE and DELTA records.
+ */
+public class HistoryLogTest {
+    private static final int RECORDS = 40;
+
+    private File directory, file, indexFile;
+    private List<HistoryCalculation> hcs;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("history-log-test").toFile();
+        file = new File(directory, "0.log");
+        indexFile = new File(directory, "0.idx");
+        hcs = new ArrayList<>();
+        for (int i = 0; i < RECORDS; ++i) {
+            //Every fifth calculation repeats an older one
+            int operand = i % 5 == 4 ? i / 2 : i;
+            List<CalculatorCharacter> ccs = Arrays.asList(new CalculatorNumber(BigDecimal.valueOf(operand)),
+                    CalculatorOperation.valueOf(SupportedOperations.Add), new CalculatorNumber(BigDecimal.ONE));
+            hcs.add(new HistoryCalculation(ccs, BigDecimal.valueOf(operand + 1), 1600000000000L + i));
+        }
+        try (HistoryLog log = open()) {
+            log.appendAll(hcs);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        indexFile.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void reopened_keepsEveryRecord() throws IOException {
+        try (HistoryLog log = open()) {
+            assertRecords(log, RECORDS);
+            //References and deltas were written
+            assertTrue(log.getSavedBytes() > 0);
+        }
+    }
+
+    @Test
+    public void truncatedLastRecord_isDropped() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 2);
+        }
+        try (HistoryLog log = open()) {
+            assertRecords(log, RECORDS - 1);
+        }
+    }
+
+    @Test
+    public void corruptLastRecord_isDropped() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 0x55);
+        }
+        try (HistoryLog log = open()) {
+            assertRecords(log, RECORDS - 1);
+        }
+    }
+
+    @Test
+    public void partialRecordAfterTheLast_isDropped() throws IOException {
+        //A crash while appending: the length of the next record without its payload
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[]{0, 0, 0, 100, 1, 2});
+        }
+        try (HistoryLog log = open()) {
+            assertRecords(log, RECORDS);
+        }
+    }
+
+    @Test
+    public void lostIndex_isBuiltAgain() throws IOException {
+        indexFile.delete();
+        try (HistoryLog log = open()) {
+            assertRecords(log, RECORDS);
+        }
+    }
+
+    @Test
+    public void appendingAfterRecovery_keepsThePositions() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        try (HistoryLog log = open()) {
+            log.appendAll(hcs.subList(RECORDS - 1, RECORDS));
+        }
+        try (HistoryLog log = open()) {
+            assertRecords(log, RECORDS);
+        }
+    }
+
+    @Test
+    public void appendingAfterALongLog_keepsEveryRecord() throws IOException {
+        //Repeats the calculations until the first ones are out of the reference window of the next open()
+        while (hcs.size() < 8 * RECORDS) {
+            HistoryCalculation hc = hcs.get(hcs.size() - RECORDS);
+            hcs.add(new HistoryCalculation(hc.getCalculatorCharacters(), hc.getResult(), hc.getTimestamp() + RECORDS));
+        }
+        try (HistoryLog log = open()) {
+            log.appendAll(hcs.subList(RECORDS, hcs.size() - 1));
+        }
+        try (HistoryLog log = open()) {
+            log.appendAll(hcs.subList(hcs.size() - 1, hcs.size()));
+        }
+        try (HistoryLog log = open()) {
+            assertRecords(log, hcs.size());
+        }
+    }
+
+    private HistoryLog open() throws IOException {
+        HistoryLog log = new HistoryLog(file, indexFile, new HistoryCodec(HistoryCodec.NO_PRECISION_CAP));
+        log.open();
+        return log;
+    }
+
+    private void assertRecords(HistoryLog log, int size) throws IOException {
+        assertEquals(size, log.size());
+        for (int i = 0; i < size; ++i) {
+            HistoryCalculation hc = log.read(i);
+            assertNotNull(hc);
+            assertEquals(hcs.get(i).getCalculatorCharacters(), hc.getCalculatorCharacters());
+            assertEquals(hcs.get(i).getResult(), hc.getResult());
+            assertEquals(hcs.get(i).getTimestamp(), hc.getTimestamp());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.benchmark;
+
+import com.poorskill.poorcalculator.calculator.Calculator;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.exceptions.CalculatorException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Benchmarks of Calculator.calculateCCS() over the generated formula shapes with 10 to 100k characters
+ * <p>
+ * Modes, profilers and the JSON export are configured in the jmh block of build.gradle
+ */
+@State(Scope.Benchmark)
+public class CalculatorBenchmark {
+    @Param({"ADDITION", "MIXED", "NESTED", "FACULTY", "DIVISION", "CONSTANT"})
+    public FormulaGenerator.Shape shape;
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int size;
+
+    private List<CalculatorCharacter> formula;
+
+    /**
+     * Generates the formula and calculates it once, so a broken formula fails before measuring
+     *
+     * @throws CalculatorException if the generated formula can't be calculated
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws CalculatorException {
+        formula = FormulaGenerator.generate(shape, size);
+        if (Calculator.calculateCCS(formula) == null) {
+            throw new IllegalStateException("Generated formula without value: " + shape + " " + size);
+        }
+    }
+
+    /**
+     * Compiles and evaluates the formula, the ResultCache is cleared first so every call misses it
+     *
+     * @return result of the formula
+     * @throws CalculatorException if the formula can't be calculated
+     */
+    @Benchmark
+    public BigDecimal calculate() throws CalculatorException {
+        Calculator.getResultCache().clear();
+        return Calculator.calculateCCS(formula);
+    }
+
+    /**
+     * Returns the formula out of the ResultCache, measures hashing and comparing the formula
+     *
+     * @return cached result of the formula
+     * @throws CalculatorException if the formula can't be calculated
+     */
+    @Benchmark
+    public BigDecimal calculateCached() throws CalculatorException {
+        return Calculator.calculateCCS(formula);
+    }
+}
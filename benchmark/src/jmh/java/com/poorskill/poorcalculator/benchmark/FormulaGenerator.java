@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Anton Kesy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.poorskill.poorcalculator.benchmark;
+
+import com.poorskill.poorcalculator.calculator.characters.CalculatorCharacter;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorConstant;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorNumber;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorOperation;
+import com.poorskill.poorcalculator.calculator.characters.CalculatorSeparator;
+import com.poorskill.poorcalculator.calculator.characters.supported.CalculatorSeparatorEnum;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedConstant;
+import com.poorskill.poorcalculator.calculator.characters.supported.SupportedOperations;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates formulas of a given shape and amount of characters for the benchmarks
+ */
+final class FormulaGenerator {
+    private static final CalculatorCharacter ADD = CalculatorOperation.valueOf(SupportedOperations.Add);
+    private static final CalculatorCharacter SUB = CalculatorOperation.valueOf(SupportedOperations.Sub);
+    private static final CalculatorCharacter MULTIPLY = CalculatorOperation.valueOf(SupportedOperations.Multiply);
+    private static final CalculatorCharacter DIVIDE = CalculatorOperation.valueOf(SupportedOperations.Divide);
+    private static final CalculatorCharacter FACULTY = CalculatorOperation.valueOf(SupportedOperations.Faculty);
+    private static final CalculatorCharacter LEFT = CalculatorSeparator.valueOf(CalculatorSeparatorEnum.LeftBracket);
+    private static final CalculatorCharacter RIGHT = CalculatorSeparator.valueOf(CalculatorSeparatorEnum.RightBracket);
+    private static final CalculatorCharacter PI = CalculatorConstant.valueOf(SupportedConstant.Pi);
+    private static final CalculatorCharacter E = CalculatorConstant.valueOf(SupportedConstant.E);
+    //Deepest bracket nesting of one block of the NESTED shape
+    private static final int MAX_NESTING = 10;
+
+    /**
+     * Shapes of the generated formulas, every shape repeats one block joined with additions
+     */
+    enum Shape {
+        //1 + 2 + 3 + ...
+        ADDITION,
+        //7 + 3 × 4 − 8 ÷ 2 + ...
+        MIXED,
+        //((2 × 1) × 1) + (((3 × 1) × 1) × 1) + ... up to 10 brackets deep
+        NESTED,
+        //5! + 3! + 10! + ...
+        FACULTY,
+        //1 ÷ 3 + 2 ÷ 7 + ... with non-terminating quotients
+        DIVISION,
+        //2π + 3 × e + ...
+        CONSTANT
+    }
+
+    private FormulaGenerator() {
+    }
+
+    /**
+     * Generates a formula of the shape with as many whole blocks as fit into the size, at least one block
+     *
+     * @param shape shape of the formula
+     * @param size  highest amount of characters of the formula
+     * @return generated formula
+     */
+    static List<CalculatorCharacter> generate(Shape shape, int size) {
+        List<CalculatorCharacter> ccs = new ArrayList<>(size);
+        List<CalculatorCharacter> block = new ArrayList<>();
+        int i = 0;
+        do {
+            block.clear();
+            if (i > 0) {
+                block.add(ADD);
+            }
+            appendBlock(shape, i++, block);
+            ccs.addAll(block);
+        } while (ccs.size() + block.size() + 1 <= size);
+        return ccs;
+    }
+
+    private static void appendBlock(Shape shape, int i, List<CalculatorCharacter> block) {
+        switch (shape) {
+            case ADDITION:
+                block.add(number(i % 9 + 1));
+                break;
+            case MIXED:
+                block.add(number(i % 9 + 1));
+                block.add(ADD);
+                block.add(number(3));
+                block.add(MULTIPLY);
+                block.add(number(i % 7 + 2));
+                block.add(SUB);
+                block.add(number(8));
+                block.add(DIVIDE);
+                block.add(number(i % 5 + 2));
+                break;
+            case NESTED:
+                int depth = i % MAX_NESTING + 1;
+                for (int j = 0; j < depth; ++j) {
+                    block.add(LEFT);
+                }
+                block.add(number(i % 9 + 1));
+                for (int j = 0; j < depth; ++j) {
+                    block.add(MULTIPLY);
+                    block.add(number(1));
+                    block.add(RIGHT);
+                }
+                break;
+            case FACULTY:
+                block.add(number(i % 8 + 3));
+                block.add(FACULTY);
+                break;
+            case DIVISION:
+                block.add(number(i % 9 + 1));
+                block.add(DIVIDE);
+                block.add(number(i % 2 == 0 ? 3 : 7));
+                break;
+            case CONSTANT:
+                block.add(number(i % 9 + 1));
+                if (i % 2 == 0) {
+                    //Implicit multiplication
+                    block.add(PI);
+                } else {
+                    block.add(MULTIPLY);
+                    block.add(E);
+                }
+                break;
+        }
+    }
+
+    private static CalculatorCharacter number(int value) {
+        return new CalculatorNumber(BigDecimal.valueOf(value));
+    }
+}